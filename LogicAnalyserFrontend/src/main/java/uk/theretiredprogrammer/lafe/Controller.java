@@ -16,9 +16,8 @@
 package uk.theretiredprogrammer.lafe;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import uk.theretiredprogrammer.lafe.ProbeStateWatchDog.ProbeState;
 
@@ -94,23 +93,39 @@ public class Controller {
 
     public boolean data() throws IOException {
         samples.clear();
-        boolean res = usbdevice.sendCommandAndHandleResponse("d", (s) -> sampleExpected(s));
+        boolean res = usbdevice.sendCommandAndHandleResponse("d", (line, length) -> sampleExpected(line, length));
         window.refreshSampleDisplay(samples);
         return res;
     }
 
     private int currentpinsample = 0;
-    private final Map<Integer, List<String>> samples = new LinkedHashMap<>();
+    private final Map<Integer, PinSample> samples = new LinkedHashMap<>();
 
-    private boolean sampleExpected(String responseline) {
-        if (responseline.startsWith("#")) {
-            currentpinsample = Integer.parseUnsignedInt(responseline.substring(2));
-            samples.put(currentpinsample, new ArrayList());
+    // sample lines are decoded as they arrive, without creating strings
+    private boolean sampleExpected(byte[] line, int length) {
+        if (length > 0 && line[0] == '#') {
+            currentpinsample = parsePin(line, length);
+            samples.put(currentpinsample, new PinSample());
         } else {
-            samples.get(currentpinsample).add(responseline);
+            samples.get(currentpinsample).decode(line, 0, length);
         }
         return true;
     }
+
+    // the pin number follows "# "
+    private int parsePin(byte[] line, int length) {
+        if (length <= 2) {
+            throw new Failure("Badly formatted pin number");
+        }
+        int pin = 0;
+        for (int i = 2; i < length; i++) {
+            if (line[i] < '0' || line[i] > '9') {
+                throw new Failure("Badly formatted pin number: " + new String(line, 0, length, StandardCharsets.US_ASCII));
+            }
+            pin = pin * 10 + (line[i] - '0');
+        }
+        return pin;
+    }
     
     public void resetProbe() {
         System.out.println("RESETING");
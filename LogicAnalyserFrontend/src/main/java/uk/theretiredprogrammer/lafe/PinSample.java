@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.lafe;
+
+import java.util.Arrays;
+
+//
+//  the sample of a pin, decoded as runs of high or low from the probe's RLE
+//  response bytes (H, L, or a count followed by H or L)
+//
+
+public class PinSample {
+
+    private boolean[] high = new boolean[256];
+    private int[] widths = new int[256];
+    private int runs = 0;
+    // the count of the run being decoded, -1 if none (a run of 1)
+    private int count = -1;
+
+    public void decode(byte[] line, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            byte c = line[i];
+            switch (c) {
+                case 'H' ->
+                    insert(true);
+                case 'L' ->
+                    insert(false);
+                default -> {
+                    if (c < '0' || c > '9') {
+                        throw new Failure("Badly encoded RLE data: " + (char) c);
+                    }
+                    count = Math.max(count, 0) * 10 + (c - '0');
+                }
+            }
+        }
+    }
+
+    private void insert(boolean level) {
+        if (runs == widths.length) {
+            high = Arrays.copyOf(high, runs * 2);
+            widths = Arrays.copyOf(widths, runs * 2);
+        }
+        high[runs] = level;
+        widths[runs++] = count < 0 ? 1 : count;
+        count = -1;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public boolean isHigh(int run) {
+        return high[run];
+    }
+
+    public int getWidth(int run) {
+        return widths[run];
+    }
+}
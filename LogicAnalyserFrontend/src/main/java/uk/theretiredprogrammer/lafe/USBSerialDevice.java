@@ -18,9 +18,10 @@ package uk.theretiredprogrammer.lafe;
 import com.fazecast.jSerialComm.SerialPort;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -64,9 +65,21 @@ public class USBSerialDevice implements Closeable {
         usbdevice.close();
     }
 
+    // a handler of a response line, passed as the printable bytes of the line (in
+    // a buffer which is reused for the next line)
+    public interface ResponseLineHandler {
+
+        public boolean apply(byte[] line, int length);
+    }
+
     private SerialPort commPort;
     private OutputStream out;
-    private InputStream in;
+    // bytes read from the port in bulk, and the current response line
+    private final byte[] buffer = new byte[16384];
+    private int bufferpos;
+    private int bufferlimit;
+    private byte[] line = new byte[256];
+    private int linelength;
     private final Consumer<String> displaystatus;
     private final String path;
 
@@ -81,13 +94,13 @@ public class USBSerialDevice implements Closeable {
         commPort.openPort();
         commPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 0, 0);
         out = commPort.getOutputStream();
-        in = commPort.getInputStream();
+        bufferpos = 0;
+        bufferlimit = 0;
     }
 
     @Override
     public void close() {
         try {
-            in.close();
             out.close();
             commPort.closePort();
         } catch (IOException ex) {
@@ -114,19 +127,54 @@ public class USBSerialDevice implements Closeable {
     }
 
     public String readln() throws IOException {
-        String response = "";
-        int c = 0;
-        while (c != '\n') {
-            c = in.read();
+        readlinebytes();
+        return new String(line, 0, linelength, StandardCharsets.US_ASCII);
+    }
+
+    // reads the next line into line/linelength, keeping only the printable bytes
+    private void readlinebytes() throws IOException {
+        linelength = 0;
+        while (true) {
+            if (bufferpos == bufferlimit) {
+                fillbuffer();
+            }
+            byte c = buffer[bufferpos++];
+            if (c == '\n') {
+                return;
+            }
             if (c >= 32 && c <= 126) {
-                response += (char) c;
+                if (linelength == line.length) {
+                    line = Arrays.copyOf(line, linelength * 2);
+                }
+                line[linelength++] = c;
             }
         }
-        return response;
+    }
+
+    // blocks until at least one byte is available, then takes all that are
+    private void fillbuffer() throws IOException {
+        int count = 0;
+        while (count == 0) {
+            count = commPort.readBytes(buffer, buffer.length);
+            if (count < 0) {
+                throw new IOException("Failure reading from " + path);
+            }
+        }
+        bufferpos = 0;
+        bufferlimit = count;
     }
 
     // higher level probe specific command poll/response functions
     public synchronized boolean sendCommandAndHandleResponse(String s, Function<String, Boolean> responselinehandler) {
+        return sendCommandAndHandleResponse(s, (bytes, length) -> {
+            String response = new String(bytes, 0, length, StandardCharsets.US_ASCII);
+            System.out.println("R: " + response);
+            return responselinehandler.apply(response);
+        });
+    }
+
+    // for bulk responses (eg sample data), where each line is handled as bytes
+    public synchronized boolean sendCommandAndHandleResponse(String s, ResponseLineHandler responselinehandler) {
         sendcommand(s);
         return handleResponse(responselinehandler);
     }
@@ -148,25 +196,19 @@ public class USBSerialDevice implements Closeable {
         throw new Failure("Attempting to Send Command", ioex);
     }
 
-    private boolean handleResponse(Function<String, Boolean> responselinehandler) {
+    private boolean handleResponse(ResponseLineHandler responselinehandler) {
         try {
             while (true) {
-                String response = readln();
-                if (response.startsWith("**DEBUG:")) {
-                    displayStatus(response);
-                } else {
+                readlinebytes();
+                if (linestartswith(DEBUGPREFIX)) {
+                    displayStatus(new String(line, 0, linelength, StandardCharsets.US_ASCII));
+                } else if (linestartswith(YPREFIX) || linestartswith(NPREFIX)) {
+                    String response = new String(line, 0, linelength, StandardCharsets.US_ASCII);
                     System.out.println("R: " + response);
-                    if (response.startsWith("Y")) {
-                        displayStatus(response, 2);
-                        return true;
-                    }
-                    if (response.startsWith("N")) {
-                        displayStatus(response, 2);
-                        return false;
-                    }
-                    if (!responselinehandler.apply(response)) {
-                        return false;
-                    }
+                    displayStatus(response, 2);
+                    return linestartswith(YPREFIX);
+                } else if (!responselinehandler.apply(line, linelength)) {
+                    return false;
                 }
             }
         } catch (IOException ex) { // treat IOException as a N response
@@ -174,6 +216,14 @@ public class USBSerialDevice implements Closeable {
         }
     }
 
+    private static final byte[] DEBUGPREFIX = "**DEBUG:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] YPREFIX = "Y".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NPREFIX = "N".getBytes(StandardCharsets.US_ASCII);
+
+    private boolean linestartswith(byte[] prefix) {
+        return linelength >= prefix.length && Arrays.equals(line, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
     private void displayStatus(String message, int startindex) {
         if (message.length() > startindex) {
             displayStatus(message.substring(startindex));
@@ -409,7 +409,7 @@ public class Window {
         return sampledisplaycanvas = new Canvas(500.0, 500.0);
     }
 
-    public void refreshSampleDisplay(Map<Integer, List<String>> samples) {
+    public void refreshSampleDisplay(Map<Integer, PinSample> samples) {
         int numbersamples = samples.size();
         expectedsamplesize = config.samplesize.get();
         // calculate layout
@@ -436,76 +436,25 @@ public class Window {
     // sample drawing variables
     private int hstart;
     private int hscale;
-    private int highpos;
-    private int lowpos;
     private int expectedsamplesize;
     private double[] xpos;
     private double[] ypos;
     private int insertat;
 
-    private void drawSample(int pin, List<String> sample, int hstart, int highpos, int lowpos) {
-        xpos = new double[expectedsamplesize];
-        ypos = new double[expectedsamplesize];
+    private void drawSample(int pin, PinSample sample, int hstart, int highpos, int lowpos) {
+        xpos = new double[sample.getRuns() * 2];
+        ypos = new double[sample.getRuns() * 2];
         insertat = 0;
         this.hstart = hstart;
-        this.highpos = highpos;
-        this.lowpos = lowpos;
-        sample.forEach(segment -> buildSamplesegment(segment));
+        for (int run = 0; run < sample.getRuns(); run++) {
+            insert(sample.isHigh(run) ? highpos : lowpos, sample.getWidth(run));
+        }
         GraphicsContext gc = sampledisplaycanvas.getGraphicsContext2D();
         gc.setStroke(RED);
         gc.setLineWidth(2.0);
         gc.strokePolyline(xpos, ypos, insertat);
     }
 
-    private void buildSamplesegment(String samplesegment) {
-        for (int cptr = 0; cptr < samplesegment.length(); cptr++) {
-            switch (samplesegment.charAt(cptr)) {
-                case 'H' -> {
-                    insertHigh();
-                }
-                case 'L' -> {
-                    insertLow();
-                }
-                default ->
-                    cptr = decoderle(cptr, samplesegment);
-            }
-        }
-    }
-
-    private int decoderle(int cptr, String s) {
-        char c = s.charAt(cptr);
-        int count = 0;
-        while ('0' <= c && c <= '9') {
-            count = count * 10 + (int) (c - '0');
-            c = s.charAt(++cptr);
-        }
-        switch (c) {
-            case 'H' ->
-                insertHigh(count);
-            case 'L' ->
-                insertLow(count);
-            default ->
-                throw new Failure("Badly encoded RLE data: " + c);
-        }
-        return cptr;
-    }
-
-    private void insertHigh() {
-        insertHigh(1);
-    }
-
-    private void insertHigh(int width) {
-        insert(highpos, width);
-    }
-
-    private void insertLow() {
-        insertLow(1);
-    }
-
-    private void insertLow(int width) {
-        insert(lowpos, width);
-    }
-
     private void insert(int vpos, int width) {
         xpos[insertat] = hstart;
         ypos[insertat++] = vpos;
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetFromCSV;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+// the configuration and datasets used by the benchmarks. Loads are single threaded
+// and the sort limit is raised, so that the code itself is measured rather than
+// the concurrency or spilling.
+public class BenchmarkData {
+
+    public static void configure(File f) throws RPTWTRException {
+        String dir = f.getAbsoluteFile().getParent();
+        Configuration.create(new String[]{"-pd", dir, "-od", dir, "-dd", dir, "-t", "1", "-sl", "100000000"});
+    }
+
+    public static StoredDataSet load(File f, CSVGenerator.Shape shape) {
+        ExpressionMap parameters = new ExpressionMap();
+        parameters.put("path", new StringLiteral(f.getAbsolutePath()));
+        parameters.put("match", new StringLiteral("full"));
+        ExpressionMap types = new ExpressionMap();
+        for (String column : CSVGenerator.getIntegerColumns(shape)) {
+            types.put(column, new StringLiteral("integer"));
+        }
+        parameters.put("types", types);
+        return DataSetFromCSV.create("benchmark", parameters);
+    }
+
+    public static StoredDataSet create(CSVGenerator.Shape shape, int rows) throws IOException, RPTWTRException {
+        File f = CSVGenerator.create(shape, false, rows);
+        try {
+            configure(f);
+            return load(f, shape);
+        } finally {
+            f.delete();
+        }
+    }
+}
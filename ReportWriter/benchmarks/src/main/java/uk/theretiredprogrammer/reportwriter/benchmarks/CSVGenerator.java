@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+// synthetic CSV files for the benchmarks - narrow (4 columns) or wide (24 columns),
+// with all fields quoted or none. The values are derived from the row number, so
+// every run sees the same data: region has 12 values, name 50000 (when quoted,
+// every 50th name contains a comma and a doubled quote).
+public class CSVGenerator {
+
+    public enum Shape {
+        NARROW, WIDE
+    }
+
+    private static final int WIDECOLUMNS = 10;
+
+    public static File create(Shape shape, boolean quoted, int rows) throws IOException {
+        File f = File.createTempFile("reportwriter-benchmark", ".csv");
+        f.deleteOnExit();
+        try ( BufferedWriter out = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            field(line, "id", quoted);
+            field(line, "name", quoted);
+            field(line, "region", quoted);
+            field(line, "amount", quoted);
+            if (shape == Shape.WIDE) {
+                for (int i = 1; i <= WIDECOLUMNS; i++) {
+                    field(line, "text" + i, quoted);
+                    field(line, "number" + i, quoted);
+                }
+            }
+            writeLine(out, line);
+            for (int row = 0; row < rows; row++) {
+                field(line, Integer.toString(row), quoted);
+                int name = (int) ((row * 7919L) % 50000);
+                field(line, quoted && name % 50 == 0 ? "name " + name + ", \"x\"" : "name" + name, quoted);
+                field(line, "R" + row % 12, quoted);
+                field(line, Long.toString((row * 104729L) % 100000), quoted);
+                if (shape == Shape.WIDE) {
+                    for (int i = 1; i <= WIDECOLUMNS; i++) {
+                        field(line, "text value " + (row + i) % 1000, quoted);
+                        field(line, Long.toString((row * (long) i) % 1000), quoted);
+                    }
+                }
+                writeLine(out, line);
+            }
+        }
+        return f;
+    }
+
+    // the names of the integer columns of a shape
+    public static String[] getIntegerColumns(Shape shape) {
+        String[] columns = new String[shape == Shape.WIDE ? WIDECOLUMNS + 1 : 1];
+        columns[0] = "amount";
+        for (int i = 1; i < columns.length; i++) {
+            columns[i] = "number" + i;
+        }
+        return columns;
+    }
+
+    private static void field(StringBuilder line, String value, boolean quoted) {
+        if (!line.isEmpty()) {
+            line.append(',');
+        }
+        if (quoted) {
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        } else {
+            line.append(value);
+        }
+    }
+
+    private static void writeLine(BufferedWriter out, StringBuilder line) throws IOException {
+        out.append(line).append('\n');
+        line.setLength(0);
+    }
+}
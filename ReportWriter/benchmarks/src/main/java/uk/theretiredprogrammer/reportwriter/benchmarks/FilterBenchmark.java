@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.SCM_ExpressionLanguage;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.DefinitionSource;
+import uk.theretiredprogrammer.reportwriter.language.Lexer;
+import uk.theretiredprogrammer.reportwriter.language.Parser;
+
+// filter evaluation, both a row at a time and over blocks of rows (as in a shared scan);
+// each returns the number of rows selected
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final int BLOCKSIZE = 1024;
+
+    @Param({"$region == R3", "$region == R3 && $amount > 50000", "$region == R3 || $name == name7 || $amount < 100"})
+    private String filtertext;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private StoredDataSet dataset;
+    private BooleanExpression filter;
+    private final long[] in = new long[BLOCKSIZE / 64];
+    private final long[] out = new long[BLOCKSIZE / 64];
+
+    @Setup
+    public void setup() throws IOException, RPTWTRException {
+        dataset = BenchmarkData.create(CSVGenerator.Shape.NARROW, rows);
+        DefinitionSource source = new DefinitionSource(filtertext);
+        new Lexer(source, new SCM_ExpressionLanguage()).lex();
+        filter = ((BooleanExpression) new Parser(source, new SCM_ExpressionLanguage()).parse()).compile(dataset.getColumnIndex());
+    }
+
+    @Benchmark
+    public int rows() {
+        int selected = 0;
+        for (int row = 0; row < dataset.size(); row++) {
+            if (filter.evaluate(dataset.getDataRecord(row))) {
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    @Benchmark
+    public int blocks() {
+        int selected = 0;
+        int size = dataset.size();
+        for (int start = 0; start < size; start += BLOCKSIZE) {
+            int count = Math.min(BLOCKSIZE, size - start);
+            for (int word = 0; word < in.length; word++) {
+                int bits = Math.max(0, Math.min(64, count - word * 64));
+                in[word] = bits == 64 ? -1L : (1L << bits) - 1;
+            }
+            filter.select(dataset, start, in, out);
+            for (long word : out) {
+                selected += Long.bitCount(word);
+            }
+        }
+        return selected;
+    }
+}
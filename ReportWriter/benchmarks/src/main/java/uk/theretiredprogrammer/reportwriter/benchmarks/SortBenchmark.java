@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetSorter;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+// multi-key sorts of the whole dataset, and the top 100 rows (bounded heap)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+    @Param({"region,amount", "name,region,id"})
+    private String keys;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private StoredDataSet dataset;
+    private final ExpressionList sortfields = new ExpressionList();
+
+    @Setup
+    public void setup() throws IOException, RPTWTRException {
+        dataset = BenchmarkData.create(CSVGenerator.Shape.NARROW, rows);
+        for (String key : keys.split(",")) {
+            sortfields.add(new StringLiteral(key));
+        }
+    }
+
+    @Benchmark
+    public StoredDataSet sort() {
+        return sort(new DataSetSorter(dataset.getColumnIndex(), sortfields));
+    }
+
+    @Benchmark
+    public StoredDataSet top100() {
+        return sort(new DataSetSorter(dataset.getColumnIndex(), sortfields, 100, true));
+    }
+
+    private StoredDataSet sort(DataSetSorter sorter) {
+        for (int row = 0; row < dataset.size(); row++) {
+            sorter.add(dataset.getDataRecord(row));
+        }
+        return sorter.sort();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetToCSV;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+
+// writing every row of a dataset as CSV
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"NARROW", "WIDE"})
+    private CSVGenerator.Shape shape;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private StoredDataSet dataset;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException, RPTWTRException {
+        dataset = BenchmarkData.create(shape, rows);
+        output = File.createTempFile("reportwriter-benchmark", ".csv");
+        output.deleteOnExit();
+    }
+
+    @TearDown
+    public void teardown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public void write() {
+        DataSetToCSV csv = new DataSetToCSV(output.getAbsolutePath());
+        try {
+            for (int row = 0; row < dataset.size(); row++) {
+                csv.write(dataset.getDataRecord(row));
+            }
+        } finally {
+            csv.close();
+        }
+    }
+}
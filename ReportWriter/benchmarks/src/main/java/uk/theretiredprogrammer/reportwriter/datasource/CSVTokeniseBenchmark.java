@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.theretiredprogrammer.reportwriter.benchmarks.CSVGenerator;
+
+// tokenising alone - in the datasource package so that the CSVReader can be used directly
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVTokeniseBenchmark {
+
+    @Param({"NARROW", "WIDE"})
+    private CSVGenerator.Shape shape;
+
+    @Param({"false", "true"})
+    private boolean quoted;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = CSVGenerator.create(shape, quoted, rows);
+    }
+
+    @TearDown
+    public void teardown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void tokenise(Blackhole blackhole) throws IOException {
+        new CSVReader(file).read(fields -> blackhole.consume(fields));
+    }
+}
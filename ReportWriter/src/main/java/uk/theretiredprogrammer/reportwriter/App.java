@@ -28,6 +28,14 @@ public class App {
                 System.err.println("Configuration Failure: " + ex.getLocalizedMessage());
                 System.exit(1);
             }
+            if (Configuration.getDefault().getArgConfiguration().isDaemonCmd()) {
+                try {
+                    new Daemon(Configuration.getDefault().getArgConfiguration().getSocket()).serve();
+                } catch (RPTWTRException ex) {
+                    System.err.println("Daemon Failure: " + ex.getLocalizedMessage());
+                    System.exit(4);
+                }
+            }
             File f = Configuration.getDefault().getReportFile();
             if (f == null) {
                 System.exit(0);
@@ -41,9 +49,11 @@ public class App {
                 System.exit(2);
             }
             try {
-                reportwriter.loadDataFiles();
-                reportwriter.createAllGeneratedFiles();
-                reportwriter.createAllReports();
+                if (Configuration.getDefault().getArgConfiguration().isWatchCmd()) {
+                    reportwriter.watch();
+                } else {
+                    reportwriter.createAll();
+                }
             } catch (RPTWTRException ex) {
                 System.err.println("Report Execution Failure: " + ex.getLocalizedMessage());
                 System.exit(3);
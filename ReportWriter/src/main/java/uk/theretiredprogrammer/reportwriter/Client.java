@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import uk.theretiredprogrammer.reportwriter.configuration.ArgConfiguration;
+
+// thin launcher for the Daemon - forwards the arguments, working directory
+// and environment and copies back the output and exit status
+public class Client {
+
+    public static void main(String args[]) {
+        try {
+            ArgConfiguration argconfiguration = new ArgConfiguration();
+            argconfiguration.parseArgs(args);
+            int status = request(argconfiguration.getSocket(), System.getProperty("user.dir"), System.getenv(), args, System.out, System.err);
+            System.out.flush();
+            System.exit(status);
+        } catch (Throwable t) {
+            System.err.println("Daemon Connection Failure: " + t.getLocalizedMessage());
+            System.exit(8);
+        }
+    }
+
+    // sends the request, copying its output to out and err, and returns its exit status
+    static int request(Path socketpath, String workingdir, Map<String, String> envmap, String[] args, PrintStream out, PrintStream err) throws IOException {
+        try ( SocketChannel socket = SocketChannel.open(UnixDomainSocketAddress.of(socketpath));  DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socket)));  DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket)))) {
+            request.writeUTF(workingdir);
+            request.writeInt(envmap.size());
+            for (var e : envmap.entrySet()) {
+                request.writeUTF(e.getKey());
+                request.writeUTF(e.getValue());
+            }
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            byte[] buffer = new byte[64 * 1024];
+            while (true) {
+                byte type = response.readByte();
+                if (type == Daemon.EXIT) {
+                    return response.readInt();
+                }
+                int length = response.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                response.readFully(buffer, 0, length);
+                PrintStream to = type == Daemon.ERR ? err : out;
+                to.write(buffer, 0, length);
+                to.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import uk.theretiredprogrammer.reportwriter.configuration.ArgConfiguration;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+
+// keeps report writers (their compiled definitions and loaded datasets)
+// resident, serving requests from the Client over a unix domain socket.
+// The socket is created in a directory only the user can access, as a
+// request runs with the user's privileges.
+//
+// request: working directory, environment, arguments
+// response: frames of stdout (OUT) and stderr (ERR) output, then the EXIT status
+public class Daemon {
+
+    static final byte OUT = 'O';
+    static final byte ERR = 'E';
+    static final byte EXIT = 'X';
+
+    private final Path socketpath;
+    private final PrintStream log;
+    private volatile ServerSocketChannel server = null;
+    private volatile boolean stopped = false;
+    // keyed by the definition, directories and command parameters of the request;
+    // a writer is only used by requests with the environment values it has used,
+    // as they may have been folded into its definition or generated datasets
+    private final Map<String, List<Resident>> resident = new ConcurrentHashMap<>();
+
+    public Daemon(Path socketpath) {
+        this.socketpath = socketpath;
+        log = Configuration.getDefault().getErr();
+    }
+
+    // serves requests until stopped
+    public void serve() throws RPTWTRException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try ( ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(createSocketAddress());
+            this.server = server;
+            try {
+                Configuration.getDefault().getOut().println("ReportWriter daemon listening on " + socketpath);
+                while (!stopped) {
+                    SocketChannel socket = server.accept();
+                    executor.execute(() -> serveRequest(socket));
+                }
+            } finally {
+                Files.deleteIfExists(socketpath);
+            }
+        } catch (IOException ex) {
+            if (!stopped) {
+                throw new RPTWTRException(ex);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    boolean isListening() {
+        return server != null;
+    }
+
+    public void stop() throws IOException {
+        stopped = true;
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private UnixDomainSocketAddress createSocketAddress() throws IOException, RPTWTRException {
+        Path dir = socketpath.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else if (!PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)).endsWith("------")) {
+            throw new RPTWTRException("Daemon socket directory must only be accessible by its owner: " + dir);
+        }
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socketpath);
+        if (Files.exists(socketpath)) {
+            // left by a daemon which did not shut down, unless one is still running
+            try ( SocketChannel running = SocketChannel.open(address)) {
+                throw new RPTWTRException("Daemon already running on " + socketpath);
+            } catch (IOException ex) {
+                Files.delete(socketpath);
+            }
+        }
+        return address;
+    }
+
+    @SuppressWarnings("UseSpecificCatch")
+    private void serveRequest(SocketChannel socket) {
+        try ( socket;  DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket)));  DataOutputStream response = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socket)))) {
+            String workingdir = in.readUTF();
+            Map<String, String> envmap = new HashMap<>();
+            int envsize = in.readInt();
+            for (int i = 0; i < envsize; i++) {
+                envmap.put(in.readUTF(), in.readUTF());
+            }
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            PrintStream out = new PrintStream(new ResponseStream(response, OUT), false);
+            PrintStream err = new PrintStream(new ResponseStream(response, ERR), true);
+            int status = run(args, workingdir, envmap, out, err);
+            out.flush();
+            err.flush();
+            synchronized (response) {
+                response.writeByte(EXIT);
+                response.writeInt(status);
+                response.flush();
+            }
+        } catch (EOFException ex) {
+            // closed without a request, as by a daemon checking whether one is running
+        } catch (Throwable t) {
+            log.println("Daemon Request Failure: " + t.getLocalizedMessage());
+        } finally {
+            Configuration.endRequest();
+        }
+    }
+
+    // as App, but returning the exit status
+    @SuppressWarnings("UseSpecificCatch")
+    private int run(String[] args, String workingdir, Map<String, String> envmap, PrintStream out, PrintStream err) {
+        try {
+            Configuration configuration;
+            try {
+                configuration = Configuration.createRequest(args, workingdir, envmap, out, err);
+            } catch (RPTWTRException ex) {
+                err.println("Configuration Failure: " + ex.getLocalizedMessage());
+                return 1;
+            }
+            ArgConfiguration argconfiguration = configuration.getArgConfiguration();
+            if (argconfiguration.isDaemonCmd() || argconfiguration.isWatchCmd()) {
+                err.println("Configuration Failure: daemon and watch cannot be requested from the daemon");
+                return 1;
+            }
+            File f = configuration.getReportFile();
+            if (f == null) {
+                return 0;
+            }
+            Resident writer;
+            try {
+                writer = getResident(configuration, f);
+            } catch (RPTWTRException ex) {
+                err.println("Report Definition Failure: " + ex.getLocalizedMessage());
+                return 2;
+            }
+            try {
+                writer.reportwriter.refresh();
+            } catch (RPTWTRException ex) {
+                err.println("Report Execution Failure: " + ex.getLocalizedMessage());
+                return 3;
+            } finally {
+                writer.setEnvironment(configuration);
+            }
+            return 0;
+        } catch (Throwable t) {
+            err.println("Program Exception Caught: " + t.getLocalizedMessage());
+            return 8;
+        }
+    }
+
+    private Resident getResident(Configuration configuration, File f) throws RPTWTRException, IOException {
+        String key = f.getCanonicalPath() + "|" + configuration.getDownloadDir().getCanonicalPath()
+                + "|" + configuration.getOutputDir().getCanonicalPath()
+                + "|" + String.join("|", configuration.getArgConfiguration().getCommandParameters());
+        List<Resident> writers = resident.computeIfAbsent(key, k -> new ArrayList<>());
+        synchronized (writers) {
+            for (Resident writer : writers) {
+                if (writer.isEnvironment(configuration)) {
+                    return writer;
+                }
+            }
+            Resident writer = new Resident(new ReportWriter(f));
+            writer.setEnvironment(configuration);
+            writers.add(writer);
+            return writer;
+        }
+    }
+
+    private static class Resident {
+
+        private final ReportWriter reportwriter;
+        private final Map<String, String> environment = new ConcurrentHashMap<>();
+
+        Resident(ReportWriter reportwriter) {
+            this.reportwriter = reportwriter;
+        }
+
+        boolean isEnvironment(Configuration configuration) {
+            for (var e : environment.entrySet()) {
+                if (!e.getValue().equals(getEnvironmentValue(configuration, e.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // records the values of the environment used so far
+        void setEnvironment(Configuration configuration) {
+            for (String name : configuration.getEnvironmentUsed()) {
+                environment.put(name, getEnvironmentValue(configuration, name));
+            }
+        }
+
+        // an unset value is recorded as \0, which no environment value can contain
+        private static String getEnvironmentValue(Configuration configuration, String name) {
+            String value = configuration.getEnvironmentValue(name);
+            return value == null ? "\0" : value;
+        }
+    }
+
+    // writes each block of output as a frame; the frames of stdout and stderr
+    // share the response stream
+    private static class ResponseStream extends OutputStream {
+
+        private final DataOutputStream response;
+        private final byte type;
+
+        ResponseStream(DataOutputStream response, byte type) {
+            this.response = response;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (response) {
+                response.writeByte(type);
+                response.writeInt(len);
+                response.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (response) {
+                response.flush();
+            }
+        }
+    }
+}
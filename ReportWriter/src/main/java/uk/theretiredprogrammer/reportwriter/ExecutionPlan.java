@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+// the dependency graph of the steps needed to execute a report definition; each
+// step uses some datasets and produces others (the "using" parameters are the
+// edges). Independent steps are run concurrently on the executor.
+class ExecutionPlan {
+
+    private final List<Step> steps = new ArrayList<>();
+    private final Map<String, Step> producers = new HashMap<>();
+    private final Map<Step, CompletableFuture<Void>> stepfutures = new HashMap<>();
+    private final Set<Step> visiting = new HashSet<>();
+
+    private record Step(List<String> produces, List<String> using, Runnable task) {
+
+    }
+
+    void addStep(List<String> produces, List<String> using, Runnable task) {
+        Step step = new Step(produces, using, task);
+        steps.add(step);
+        produces.forEach(datasetname -> producers.put(datasetname, step));
+    }
+
+    void execute(ExecutorService executor, Predicate<String> available) throws RPTWTRException {
+        try {
+            CompletableFuture.allOf(steps.stream()
+                    .map(step -> whenComplete(step, executor, available))
+                    .toArray(CompletableFuture<?>[]::new))
+                    .join();
+        } catch (CompletionException ex) {
+            throw new RPTWTRException(ex.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> whenComplete(Step step, ExecutorService executor, Predicate<String> available) {
+        CompletableFuture<Void> complete = stepfutures.get(step);
+        if (complete == null) {
+            if (!visiting.add(step)) {
+                throw new RPTWTRRuntimeException("using: circular reference to dataset - " + step.produces.get(0));
+            }
+            complete = CompletableFuture.allOf(step.using.stream()
+                    .map(datasetname -> whenReady(datasetname, executor, available))
+                    .toArray(CompletableFuture<?>[]::new))
+                    .thenRunAsync(step.task, executor);
+            visiting.remove(step);
+            stepfutures.put(step, complete);
+        }
+        return complete;
+    }
+
+    private CompletableFuture<Void> whenReady(String datasetname, ExecutorService executor, Predicate<String> available) {
+        Step producer = producers.get(datasetname);
+        if (producer != null) {
+            return whenComplete(producer, executor, available);
+        }
+        return available.test(datasetname)
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.failedFuture(new RPTWTRRuntimeException("using: dataset is not available - " + datasetname));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.util.List;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetAggregator;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetDistinct;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetJoin;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetSorter;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSets;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+class GeneratedDataStatement extends ScanConsumer {
+
+    private final String toname;
+    private final ExpressionMap joinparameters;
+    private final String withname;
+    private final ExpressionList groupby;
+    private final ExpressionList aggregates;
+    private final boolean distinct;
+    private final ExpressionList distinctfields;
+    private final DataSets datasets;
+    private StoredDataSet generated;
+    private DataSetSorter sorter;
+    private DataSetJoin join;
+    private DataSetAggregator aggregator;
+    private DataSetDistinct distinctrows;
+
+    GeneratedDataStatement(String toname, ExpressionMap parameters, DataSets datasets) {
+        super(parameters, "generated_data");
+        this.toname = toname;
+        this.joinparameters = DataTypes.isExpressionMap(parameters, "join");
+        this.withname = joinparameters == null ? null : DataTypes.getRequiredString(joinparameters, "with", "join");
+        this.groupby = DataTypes.isExpressionList(parameters, "group_by");
+        this.aggregates = DataTypes.isExpressionList(parameters, "aggregates");
+        // distinct is either all (compare all fields) or a list of the fields to compare
+        if (parameters.get("distinct") instanceof ExpressionList list) {
+            if (list.isEmpty()) {
+                throw new RuntimeException("distinct parameter requires all or a list of fields, in generated_data statement " + parameters);
+            }
+            this.distinct = true;
+            this.distinctfields = list;
+        } else {
+            StringExpression all = DataTypes.isStringExpression(parameters, "distinct");
+            if (all != null && !all.evaluate(DataRecord.EMPTY).equals("all")) {
+                throw new RuntimeException("distinct parameter requires all or a list of fields, in generated_data statement " + parameters);
+            }
+            this.distinct = all != null;
+            this.distinctfields = null;
+        }
+        this.datasets = datasets;
+    }
+
+    @Override
+    boolean isView() {
+        return joinparameters == null && groupby == null && aggregates == null && !distinct && !isSorted() && getLimit() == 0;
+    }
+
+    @Override
+    List<String> produces() {
+        return List.of(toname);
+    }
+
+    @Override
+    List<String> requires() {
+        return withname == null ? List.of() : List.of(withname);
+    }
+
+    @Override
+    void start(StoredDataSet source) {
+        ColumnIndex columnindex = source.getColumnIndex();
+        if (joinparameters != null) {
+            StringExpression type = DataTypes.isStringExpression(joinparameters, "type");
+            join = new DataSetJoin(source, withname, datasets.getDataSet(withname),
+                    DataTypes.getRequiredList(joinparameters, "on", "join"),
+                    DataTypes.isExpressionList(joinparameters, "to"),
+                    type == null ? DataSetJoin.Type.INNER : DataSetJoin.getType(type.evaluate(DataRecord.EMPTY)));
+            columnindex = join.getColumnIndex();
+        }
+        // with a join, the filter applies to the joined rows
+        compileFilter(columnindex);
+        if (distinct) {
+            // duplicates are removed before any aggregation, sort or limit
+            distinctrows = new DataSetDistinct(columnindex, distinctfields);
+        }
+        if (groupby != null || aggregates != null) {
+            // rows are aggregated before any sort or limit
+            aggregator = new DataSetAggregator(columnindex, groupby, aggregates);
+        } else if (isSorted()) {
+            sorter = createSorter(columnindex);
+        } else {
+            generated = new StoredDataSet(columnindex);
+        }
+    }
+
+    @Override
+    boolean isComplete() {
+        return getLimit() > 0 && generated != null && generated.size() >= getLimit();
+    }
+
+    @Override
+    void select(StoredDataSet source, int start, long[] in, long[] out) {
+        if (join == null) {
+            super.select(source, start, in, out);
+        } else {
+            System.arraycopy(in, 0, out, 0, in.length);
+        }
+    }
+
+    @Override
+    void accept(DataRecord datarecord) {
+        if (join == null) {
+            insert(datarecord);
+        } else {
+            join.add(datarecord, this::insertJoined);
+        }
+    }
+
+    private void insertJoined(DataRecord datarecord) {
+        if (super.test(datarecord)) {
+            insert(datarecord);
+        }
+    }
+
+    private void insert(DataRecord datarecord) {
+        if (distinctrows == null) {
+            store(datarecord);
+        } else {
+            distinctrows.add(datarecord, this::store);
+        }
+    }
+
+    private void store(DataRecord datarecord) {
+        if (aggregator != null) {
+            aggregator.add(datarecord);
+        } else if (sorter != null) {
+            sorter.add(datarecord);
+        } else if (getLimit() == 0 || generated.size() < getLimit()) {
+            generated.insertDataRecord(datarecord);
+        }
+    }
+
+    @Override
+    void finish() {
+        if (join != null) {
+            join.finish(this::insertJoined);
+            join = null;
+        }
+        if (distinctrows != null) {
+            distinctrows.finish(this::store);
+            distinctrows = null;
+        }
+        if (aggregator != null) {
+            generated = sortTimed(() -> order(aggregator.finish()));
+            aggregator = null;
+        }
+        if (sorter != null) {
+            generated = sortTimed(() -> sorter.sort());
+            sorter = null;
+        }
+        if (getStatistics() != null) {
+            getStatistics().setRowsOut(generated.size());
+        }
+        datasets.saveDataSet(toname, generated);
+        generated = null;
+        if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
+            Configuration.getDefault().getOut().println("generating " + toname + " from " + getUsing() + (withname == null ? "" : " joined with " + withname));
+        }
+    }
+}
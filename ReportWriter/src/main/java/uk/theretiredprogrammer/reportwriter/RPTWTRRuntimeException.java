@@ -37,6 +37,9 @@ public class RPTWTRRuntimeException extends RuntimeException {
     }
     
     private static String createSourceExtract(String message, TokenSourceLocator locator) {
+        if (locator == null) {
+            return message;
+        }
         StringBuilder sb = new StringBuilder();
         sb.append(message);
         sb.append('\n');
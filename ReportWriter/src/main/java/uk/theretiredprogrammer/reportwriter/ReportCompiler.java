@@ -39,7 +39,7 @@ public class ReportCompiler {
                 Lexer lexer = new Lexer(source, scmlanguage);
                 Parser parser = new Parser(source, scmlanguage);
                 lexer.lex();
-                compiledoutput = DataTypes.isExpressionMap(parser.parse());
+                compiledoutput = DataTypes.isExpressionMap(parser.parse().compile(null));
             }
         } catch (Throwable t) {
             throw new RPTWTRRuntimeException(t);
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetAggregator;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetSorter;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetToCSV;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetToSysout;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+// a report written directly from the rows of a shared scan (or from the groups
+// when aggregating); the output is only created (and the headers evaluated)
+// when the first row is written. Sorted rows are written once the scan is complete.
+class ReportStatement extends ScanConsumer {
+
+    private final ExpressionList headers;
+    private final ExpressionList fields;
+    private final String to;
+    private final String title;
+    private final ExpressionList groupby;
+    private final ExpressionList aggregates;
+    private DataSetAggregator aggregator;
+    private DataSetSorter sorter;
+    private int written;
+    private StringExpression[] headerexpressions;
+    private StringExpression[] fieldexpressions;
+    private ColumnIndex outputcolumnindex;
+    private DataSetToCSV csv;
+    private DataSetToSysout sysout;
+    private ByteArrayOutputStream sysoutbuffer;
+    private String output;
+
+    ReportStatement(ExpressionMap map) {
+        super(map, "reports");
+        headers = DataTypes.getRequiredList(map, "headers", "reports");
+        fields = DataTypes.getRequiredList(map, "fields", "reports");
+        to = DataTypes.isStringLiteral(map, "to");
+        title = DataTypes.isStringLiteral(map, "title");
+        groupby = DataTypes.isExpressionList(map, "group_by");
+        aggregates = DataTypes.isExpressionList(map, "aggregates");
+    }
+
+    // reports are unnamed, so identified by their output
+    String getName() {
+        return to != null ? to : title != null ? title : getUsing();
+    }
+
+    // any output to be displayed, so that concurrently created reports
+    // can be displayed in definition order
+    String getOutput() {
+        return output;
+    }
+
+    @Override
+    void start(StoredDataSet source) {
+        super.start(source);
+        outputcolumnindex = null;
+        output = null;
+        written = 0;
+        if (groupby != null || aggregates != null) {
+            aggregator = new DataSetAggregator(source.getColumnIndex(), groupby, aggregates);
+        } else {
+            compileOutput(source.getColumnIndex());
+            if (isSorted()) {
+                sorter = createSorter(source.getColumnIndex());
+            }
+        }
+    }
+
+    @Override
+    boolean isComplete() {
+        return aggregator == null && sorter == null && getLimit() > 0 && written >= getLimit();
+    }
+
+    private void compileOutput(ColumnIndex columnindex) {
+        headerexpressions = compile(headers, columnindex);
+        fieldexpressions = compile(fields, columnindex);
+    }
+
+    private StringExpression[] compile(ExpressionList expressions, ColumnIndex columnindex) {
+        return expressions.compile(columnindex).stream()
+                .map(operand -> DataTypes.isStringExpression(operand))
+                .toArray(StringExpression[]::new);
+    }
+
+    private String[] evaluate(StringExpression[] expressions, DataRecord datarecord) {
+        String[] values = new String[expressions.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = expressions[i].evaluate(datarecord);
+        }
+        return values;
+    }
+
+    @Override
+    void accept(DataRecord datarecord) {
+        if (aggregator != null) {
+            aggregator.add(datarecord);
+        } else if (sorter != null) {
+            sorter.add(datarecord);
+        } else if (getLimit() == 0 || written < getLimit()) {
+            output(datarecord);
+        }
+    }
+
+    private void output(DataRecord datarecord) {
+        written++;
+        if (outputcolumnindex == null) {
+            String[] headervalues = evaluate(headerexpressions, datarecord);
+            outputcolumnindex = new ColumnIndex(Arrays.asList(headervalues));
+            if (to == null) {
+                sysoutbuffer = new ByteArrayOutputStream();
+                sysout = new DataSetToSysout(title, sysoutbuffer);
+            } else {
+                csv = new DataSetToCSV(to);
+            }
+            write(new DataRecord(outputcolumnindex, headervalues));
+        }
+        write(new DataRecord(outputcolumnindex, evaluate(fieldexpressions, datarecord)));
+    }
+
+    private void write(DataRecord datarecord) {
+        if (csv != null) {
+            csv.write(datarecord);
+        } else {
+            sysout.write(datarecord);
+        }
+    }
+
+    @Override
+    void finish() {
+        StoredDataSet ordered = null;
+        if (aggregator != null) {
+            ordered = sortTimed(() -> order(aggregator.finish()));
+            aggregator = null;
+            compileOutput(ordered.getColumnIndex());
+        }
+        if (sorter != null) {
+            ordered = sortTimed(() -> sorter.sort());
+            sorter = null;
+        }
+        long start = System.nanoTime();
+        if (ordered != null) {
+            ordered.getStream().forEach(datarecord -> output(datarecord));
+        }
+        if (csv != null) {
+            csv.close();
+            csv = null;
+        }
+        if (sysout != null) {
+            sysout.close();
+            output = sysoutbuffer.toString();
+            sysout = null;
+            sysoutbuffer = null;
+        }
+        if (getStatistics() != null) {
+            getStatistics().addWriteTime(System.nanoTime() - start);
+            getStatistics().setRowsOut(written);
+        }
+    }
+
+    @Override
+    void close() {
+        if (csv != null) {
+            DataSetToCSV unfinished = csv;
+            csv = null;
+            unfinished.close();
+        }
+    }
+}
@@ -16,103 +16,387 @@
 package uk.theretiredprogrammer.reportwriter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import uk.theretiredprogrammer.reportwriter.datasource.DataSetFromCSV;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
-import uk.theretiredprogrammer.reportwriter.datasource.DataSetStream;
-import uk.theretiredprogrammer.reportwriter.datasource.DataSetToCSV;
-import uk.theretiredprogrammer.reportwriter.datasource.DataSetToSysout;
 import uk.theretiredprogrammer.reportwriter.datasource.DataSets;
 import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
-import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
-import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
 
 public class ReportWriter {
 
-    private final ReportCompiler compiled;
+    private static final long SETTLETIME = 500;
+
+    private final File reportfile;
+    private ReportCompiler compiled;
+    private long compiledtime;
     private final DataSets datasets = new DataSets();
+    // the source of each loaded dataset, as it was when loaded
+    private final Map<String, String> sources = new ConcurrentHashMap<>();
+    // set when watching or serving the daemon, when datasets are kept between runs
+    private boolean resident;
 
     @SuppressWarnings("UseSpecificCatch")
     public ReportWriter(File f) throws RPTWTRException {
+        reportfile = f;
+        compiledtime = f.lastModified();
         compiled = new ReportCompiler(f);
     }
 
     public void loadDataFiles() throws RPTWTRException {
-        try {
-            ExpressionMap datadefs = compiled.getCompiledOutputDataStatements();
-            datadefs.entrySet().stream()
-                    .forEach(nameandparameters -> {
-                        datasets.saveDataSet(nameandparameters.getKey(),
-                                DataSetFromCSV.create(
-                                        nameandparameters.getKey(),
-                                        DataTypes.isExpressionMap(nameandparameters.getValue())));
-                    });
-        } catch (Throwable t) {
-            throw new RPTWTRException(t);
+        execute(true, false, false);
+    }
+
+    public void createAllGeneratedFiles() throws RPTWTRException {
+        execute(false, true, false);
+    }
+
+    public void createAllReports() throws RPTWTRException {
+        execute(false, false, true);
+    }
+
+    public void createAll() throws RPTWTRException {
+        execute(true, true, true);
+    }
+
+    // the datasets still held once a run has finished
+    StoredDataSet getDataSet(String datasetname) {
+        return datasets.getDataSet(datasetname);
+    }
+
+    // creates everything, then waits for changes to the download files or the
+    // report definition, reloading only the changed datasets and then rerunning
+    // the statements downstream of them (or all statements if the definition
+    // has changed); unchanged datasets remain loaded.
+    public void watch() throws RPTWTRException {
+        resident = true;
+        createAll();
+        try ( WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Path downloaddir = Configuration.getDefault().getDownloadDir().toPath().toAbsolutePath();
+            Path definitiondir = reportfile.getAbsoluteFile().getParentFile().toPath();
+            Path definitionname = reportfile.toPath().getFileName();
+            downloaddir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            if (!definitiondir.equals(downloaddir)) {
+                definitiondir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            }
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean definitionchanged = false;
+                // wait for the events from files being written to settle
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (key.watchable().equals(definitiondir) && definitionname.equals(event.context())) {
+                            definitionchanged = true;
+                        }
+                    }
+                    key.reset();
+                    key = watcher.poll(SETTLETIME, TimeUnit.MILLISECONDS);
+                }
+                try {
+                    rerun(definitionchanged);
+                } catch (RPTWTRException ex) {
+                    Configuration.getDefault().getErr().println("Report Execution Failure: " + ex.getLocalizedMessage());
+                }
+            }
+        } catch (IOException ex) {
+            throw new RPTWTRException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    // used by the daemon for each request - the resident definition and
+    // datasets are brought up to date (as for watch) and all reports are created
+    public synchronized void refresh() throws RPTWTRException {
+        resident = true;
+        boolean definitionchanged = reportfile.lastModified() != compiledtime;
+        if (definitionchanged) {
+            long lastmodified = reportfile.lastModified();
+            compiled = new ReportCompiler(reportfile);
+            compiledtime = lastmodified;
+        }
+        Set<String> changed = getChangedDataSets();
+        if (definitionchanged || !changed.isEmpty()) {
+            execute(true, true, false, changed, !definitionchanged);
+        }
+        createAllReports();
+    }
+
     @SuppressWarnings("UseSpecificCatch")
-    public void createAllGeneratedFiles() throws RPTWTRException {
+    private void rerun(boolean definitionchanged) throws RPTWTRException {
+        if (definitionchanged) {
+            try {
+                compiled = new ReportCompiler(reportfile);
+            } catch (Throwable t) {
+                Configuration.getDefault().getErr().println("Report Definition Failure: " + t.getLocalizedMessage());
+                return;
+            }
+        }
+        Set<String> changed = getChangedDataSets();
+        if (definitionchanged || !changed.isEmpty()) {
+            if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
+                Configuration.getDefault().getOut().println(definitionchanged ? "report definition changed" : "datasets changed: " + String.join(", ", changed));
+            }
+            execute(true, true, true, changed, !definitionchanged);
+        }
+    }
+
+    private Set<String> getChangedDataSets() {
+        Set<String> changed = new HashSet<>();
+        compiled.getCompiledOutputDataStatements().forEach((name, parameters) -> {
+            String source = DataSetFromCSV.getSourceKey(DataTypes.isExpressionMap(parameters));
+            if (source == null || !source.equals(sources.get(name))) {
+                changed.add(name);
+            }
+        });
+        return changed;
+    }
+
+    private void execute(boolean loaddata, boolean generatedata, boolean createreports) throws RPTWTRException {
+        execute(loaddata, generatedata, createreports, null, false);
+    }
+
+    // reload is the set of data statements to be loaded (null for all); if
+    // downstreamonly, just the statements depending on the reloaded datasets are run.
+    // When just creating reports, any generated datasets they need which are not
+    // available are created. When creating everything in a single run, only the
+    // generated datasets needed by the reports are created, views are folded into
+    // their consumer, and each dataset is released once its last consumer finishes.
+    @SuppressWarnings("UseSpecificCatch")
+    private void execute(boolean loaddata, boolean generatedata, boolean createreports, Set<String> reload, boolean downstreamonly) throws RPTWTRException {
+        int threads = Configuration.getDefault().getArgConfiguration().getThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        RunStatistics statistics = Configuration.getDefault().getArgConfiguration().isStatsCmd() ? new RunStatistics() : null;
         try {
+            ExecutionPlan plan = new ExecutionPlan();
+            if (loaddata) {
+                compiled.getCompiledOutputDataStatements().entrySet().stream()
+                        .filter(nameandparameters -> reload == null || reload.contains(nameandparameters.getKey()))
+                        .forEach(nameandparameters -> {
+                            String name = nameandparameters.getKey();
+                            ExpressionMap parameters = DataTypes.isExpressionMap(nameandparameters.getValue());
+                            RunStatistics.Stage stage = statistics == null ? null : statistics.addStage("data", name);
+                            plan.addStep(List.of(name), List.of(), () -> loadDataFile(name, parameters, stage));
+                        });
+            }
+            List<GeneratedDataStatement> generatedstatements = new ArrayList<>();
             var generated = compiled.getCompiledOutputGeneratedDataStatements();
-            if (generated != null) {
+            if ((generatedata || createreports) && generated != null) {
                 generated.entrySet()
-                    .forEach(nameandparameters -> {
-                        String toname = nameandparameters.getKey();
-                        ExpressionMap parameters = DataTypes.isExpressionMap(nameandparameters.getValue());
-                        String fromname = DataTypes.getRequiredString(parameters, "using", "generated_data");
-                        StoredDataSet from = datasets.getDataSet(fromname);
-                        DataSetStream datarecordsstream = from.createDataRecordStream();
-                        BooleanExpression filterexpression = DataTypes.isBooleanExpression(parameters, "filter");
-                        if (filterexpression != null) {
-                            datarecordsstream = datarecordsstream.createDataSetStream(datarecordsstream.filter(filterexpression));
-                        }
-                        ExpressionList sortfields = DataTypes.isExpressionList(parameters, "sort_by");
-                        if (sortfields != null) {
-                            datarecordsstream = datarecordsstream.createDataSetStream(datarecordsstream.sort(sortfields));
-                        }
-                        datasets.saveDataSet(toname, datarecordsstream.createStoredDataSet());
-                        if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
-                            System.out.println("generating " + toname + " from " + fromname);
-                        }
-                    });
+                        .forEach(nameandparameters -> generatedstatements.add(new GeneratedDataStatement(nameandparameters.getKey(),
+                                DataTypes.isExpressionMap(nameandparameters.getValue()), datasets)));
+            }
+            List<ReportStatement> reportstatements = new ArrayList<>();
+            var reports = compiled.getCompiledOutputReportsStatements();
+            if (createreports && reports != null) {
+                reports.forEach(operand -> reportstatements.add(new ReportStatement(DataTypes.isExpressionMap(operand))));
             }
+            if (downstreamonly) {
+                Set<String> downstream = getDownstream(reload, generatedstatements);
+                generatedstatements.removeIf(statement -> !downstream.containsAll(statement.produces()));
+                reportstatements.removeIf(statement -> !downstream.contains(statement.getUsing()));
+            }
+            boolean singlerun = loaddata && generatedata && createreports && reload == null && !resident;
+            if (!generatedata || singlerun) {
+                retainNeeded(generatedstatements, reportstatements, !generatedata);
+            }
+            if (singlerun) {
+                foldViews(generatedstatements, reportstatements);
+            }
+            List<ScanConsumer> allconsumers = new ArrayList<>(generatedstatements);
+            allconsumers.addAll(reportstatements);
+            Map<String, AtomicInteger> references = singlerun ? getReferences(allconsumers) : null;
+            Map<String, List<ScanConsumer>> consumersbysource = new LinkedHashMap<>();
+            for (ScanConsumer statement : allconsumers) {
+                if (statistics != null) {
+                    statement.setStatistics(statement instanceof ReportStatement report
+                            ? statistics.addStage("report", report.getName())
+                            : statistics.addStage("generated_data", statement.produces().get(0)));
+                }
+                consumersbysource.computeIfAbsent(statement.getUsing(), k -> new ArrayList<>()).add(statement);
+            }
+            consumersbysource.forEach((source, consumers) -> addSharedScans(plan, source, consumers, threads, references));
+            plan.execute(executor, datasetname -> datasets.getDataSet(datasetname) != null);
+            for (ReportStatement statement : reportstatements) {
+                if (statement.getOutput() != null) {
+                    Configuration.getDefault().getOut().print(statement.getOutput());
+                }
+            }
+            if (statistics != null) {
+                statistics.print(Configuration.getDefault().getOut());
+                String statsfile = Configuration.getDefault().getArgConfiguration().getStatsFile();
+                if (statsfile != null) {
+                    statistics.writeJSON(statsfile);
+                }
+            }
+        } catch (RPTWTRException ex) {
+            throw ex;
         } catch (Throwable t) {
             throw new RPTWTRException(t);
+        } finally {
+            executor.shutdown();
         }
     }
 
-    public void createAllReports() throws RPTWTRException {
-        try {
-            compiled.getCompiledOutputReportsStatements().stream()
-                    .forEachOrdered((operand) -> {
-                        ExpressionMap map = DataTypes.isExpressionMap(operand);
-                        StoredDataSet primarydataset = datasets.getDataSet(DataTypes.getRequiredString(map, "using", "reports"));
-                        DataSetStream primarystream = primarydataset.createDataRecordStream();
-                        ExpressionList headers = DataTypes.isExpressionList(map, "headers");
-                        BooleanExpression filterexpression = DataTypes.isBooleanExpression(map, "filter");
-                        ExpressionList fields = DataTypes.getRequiredList(map, "fields", "reports");
-                        String to = DataTypes.isStringLiteral(map, "to");
-                        String title = DataTypes.isStringLiteral(map, "title");
-                        if (filterexpression != null) {
-                            primarystream = primarystream.createDataSetStream(primarystream.filter(filterexpression));
-                        }
-                        StoredDataSet dataset = primarystream.createStoredDataSet();
-                        if (!dataset.isEmpty()) {
-                            var headerfields = dataset.evaluateheaders(headers);
-                            primarystream = dataset.createDataRecordStream(headerfields);
-                            primarystream = primarystream.createDataSetStreamIncludeHeader(primarystream.buildNewDataRecordStream(fields));
-                            if (to == null) {
-                                DataSetToSysout.display(title, primarystream);
-                            } else {
-                                DataSetToCSV.save(to, primarystream);
-                            }
-                        }
-                    });
-        } catch (Throwable t) {
-            throw new RPTWTRException(t);
+    // all consumers of a dataset share passes over it, but they are spread
+    // over as many passes as there are threads so that the passes run concurrently.
+    // Consumers which also need other datasets are given passes of their own.
+    private void addSharedScans(ExecutionPlan plan, String source, List<ScanConsumer> consumers, int threads, Map<String, AtomicInteger> references) {
+        List<ScanConsumer> shared = new ArrayList<>();
+        for (ScanConsumer consumer : consumers) {
+            if (consumer.requires().isEmpty()) {
+                shared.add(consumer);
+            } else {
+                addSharedScan(plan, source, List.of(consumer), references);
+            }
+        }
+        int scans = Math.min(threads, shared.size());
+        for (int i = 0; i < scans; i++) {
+            List<ScanConsumer> scanconsumers = new ArrayList<>();
+            for (int j = i; j < shared.size(); j += scans) {
+                scanconsumers.add(shared.get(j));
+            }
+            addSharedScan(plan, source, scanconsumers, references);
+        }
+    }
+
+    // if references is given, the datasets used are released once no longer referenced
+    private void addSharedScan(ExecutionPlan plan, String source, List<ScanConsumer> scanconsumers, Map<String, AtomicInteger> references) {
+        List<String> produces = new ArrayList<>();
+        List<String> using = new ArrayList<>(List.of(source));
+        for (ScanConsumer consumer : scanconsumers) {
+            produces.addAll(consumer.produces());
+            using.addAll(consumer.requires());
+        }
+        plan.addStep(produces, using, () -> {
+            new SharedScan(datasets.getDataSet(source), scanconsumers).run();
+            if (references != null) {
+                scanconsumers.forEach(consumer -> release(references, consumer));
+            }
+        });
+    }
+
+    private void release(Map<String, AtomicInteger> references, ScanConsumer consumer) {
+        List<String> used = new ArrayList<>(consumer.requires());
+        used.add(consumer.getUsing());
+        for (String datasetname : used) {
+            if (references.get(datasetname).decrementAndGet() == 0) {
+                datasets.removeDataSet(datasetname);
+            }
+        }
+    }
+
+    private Map<String, AtomicInteger> getReferences(List<ScanConsumer> consumers) {
+        Map<String, AtomicInteger> references = new ConcurrentHashMap<>();
+        for (ScanConsumer consumer : consumers) {
+            references.computeIfAbsent(consumer.getUsing(), k -> new AtomicInteger()).incrementAndGet();
+            consumer.requires().forEach(datasetname -> references.computeIfAbsent(datasetname, k -> new AtomicInteger()).incrementAndGet());
+        }
+        return references;
+    }
+
+    // removes the generated data statements not needed (directly or indirectly) by
+    // the reports; if onlymissing, datasets already available are not regenerated
+    private void retainNeeded(List<GeneratedDataStatement> generatedstatements, List<ReportStatement> reportstatements, boolean onlymissing) {
+        Map<String, GeneratedDataStatement> producers = new HashMap<>();
+        generatedstatements.forEach(statement -> producers.put(statement.produces().get(0), statement));
+        Set<GeneratedDataStatement> needed = new HashSet<>();
+        Deque<String> datasetnames = new ArrayDeque<>();
+        reportstatements.forEach(statement -> datasetnames.add(statement.getUsing()));
+        while (!datasetnames.isEmpty()) {
+            String datasetname = datasetnames.pop();
+            GeneratedDataStatement producer = producers.get(datasetname);
+            if (producer != null && !(onlymissing && datasets.getDataSet(datasetname) != null) && needed.add(producer)) {
+                datasetnames.add(producer.getUsing());
+                datasetnames.addAll(producer.requires());
+            }
+        }
+        generatedstatements.retainAll(needed);
+    }
+
+    // a view with a single consumer (which doesn't join) is folded into that consumer,
+    // so that the rows are streamed to the consumer rather than stored. Repeated
+    // until there are no more, so that chains of views are folded.
+    private void foldViews(List<GeneratedDataStatement> generatedstatements, List<ReportStatement> reportstatements) {
+        boolean folded;
+        do {
+            folded = false;
+            for (GeneratedDataStatement view : generatedstatements) {
+                String name = view.produces().get(0);
+                List<ScanConsumer> consumers = new ArrayList<>();
+                for (ScanConsumer consumer : generatedstatements) {
+                    if (consumer.getUsing().equals(name) || consumer.requires().contains(name)) {
+                        consumers.add(consumer);
+                    }
+                }
+                for (ScanConsumer consumer : reportstatements) {
+                    if (consumer.getUsing().equals(name)) {
+                        consumers.add(consumer);
+                    }
+                }
+                if (view.isView() && consumers.size() == 1 && consumers.get(0) != view && consumers.get(0).requires().isEmpty()) {
+                    if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
+                        Configuration.getDefault().getOut().println("streaming " + name + " from " + view.getUsing() + " (not stored)");
+                    }
+                    consumers.get(0).fold(view);
+                    generatedstatements.remove(view);
+                    folded = true;
+                    break;
+                }
+            }
+        } while (folded);
+    }
+
+    // the changed datasets, and all the datasets generated from them
+    private Set<String> getDownstream(Set<String> changed, List<GeneratedDataStatement> statements) {
+        Set<String> downstream = new HashSet<>(changed);
+        boolean added;
+        do {
+            added = false;
+            for (GeneratedDataStatement statement : statements) {
+                if (!downstream.containsAll(statement.produces())
+                        && (downstream.contains(statement.getUsing()) || statement.requires().stream().anyMatch(downstream::contains))) {
+                    downstream.addAll(statement.produces());
+                    added = true;
+                }
+            }
+        } while (added);
+        return downstream;
+    }
+
+    private void loadDataFile(String name, ExpressionMap parameters, RunStatistics.Stage stage) {
+        String source = DataSetFromCSV.getSourceKey(parameters);
+        long start = System.nanoTime();
+        StoredDataSet dataset = DataSetFromCSV.create(name, parameters);
+        if (stage != null) {
+            stage.setLoad(DataSetFromCSV.getInputLength(parameters), dataset.size(), System.nanoTime() - start);
+        }
+        datasets.saveDataSet(name, dataset);
+        if (source != null) {
+            sources.put(name, source);
         }
     }
 }
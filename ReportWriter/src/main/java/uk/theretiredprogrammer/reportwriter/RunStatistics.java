@@ -0,0 +1,193 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+
+// the statistics of a run, collected (when the stats option is set) for each
+// data load, generated dataset and report, and printed as a table and optionally
+// written as JSON. Sort time includes completing any aggregation; for generated
+// data, write time is the time taken adding the rows (including any join or
+// aggregation). The heap is that in use when the stage completed, so includes
+// that of any stages running concurrently.
+class RunStatistics {
+
+    private static final String[] HEADERS = {"stage", "name", "bytes", "rows in", "rows out",
+        "parse ms", "filter ms", "sort ms", "write ms", "heap MB"};
+    private static final String[] JSONNAMES = {"stage", "name", "bytes", "rows_in", "rows_out",
+        "parse_ms", "filter_ms", "sort_ms", "write_ms", "heap_bytes"};
+
+    static class Stage {
+
+        private final String type;
+        private final String name;
+        private long bytes = -1;
+        private long rowsin = -1;
+        private long rowsout = -1;
+        private long parsetime = -1;
+        private long filtertime = -1;
+        private long sorttime = -1;
+        private long writetime = -1;
+        private long heap = -1;
+
+        private Stage(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        void setScanned() {
+            rowsin = 0;
+            filtertime = 0;
+            writetime = 0;
+        }
+
+        void setLoad(long bytes, long rows, long parsetime) {
+            this.bytes = bytes;
+            this.rowsout = rows;
+            this.parsetime = parsetime;
+            heap = MEMORY.getHeapMemoryUsage().getUsed();
+        }
+
+        void addRowsIn(long rows) {
+            rowsin = Math.max(rowsin, 0) + rows;
+        }
+
+        void setRowsOut(long rows) {
+            rowsout = rows;
+            heap = MEMORY.getHeapMemoryUsage().getUsed();
+        }
+
+        void addFilterTime(long nanos) {
+            filtertime = Math.max(filtertime, 0) + nanos;
+        }
+
+        void addSortTime(long nanos) {
+            sorttime = Math.max(sorttime, 0) + nanos;
+        }
+
+        void addWriteTime(long nanos) {
+            writetime = Math.max(writetime, 0) + nanos;
+        }
+
+        // in table order; null if not applicable
+        private String[] getValues(boolean json) {
+            return new String[]{type, name, count(bytes), count(rowsin), count(rowsout),
+                millis(parsetime), millis(filtertime), millis(sorttime), millis(writetime),
+                heap < 0 ? null : json ? Long.toString(heap) : Long.toString(heap / (1024 * 1024))};
+        }
+    }
+
+    // the heap pools each peak at different times, so the sum of their peaks
+    // overstates the heap used; instead the heap is sampled as each stage completes
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final long starttime = System.nanoTime();
+
+    // stages are added while planning, so that they are listed in definition order
+    synchronized Stage addStage(String type, String name) {
+        Stage stage = new Stage(type, name);
+        stages.add(stage);
+        return stage;
+    }
+
+    private static String count(long value) {
+        return value < 0 ? null : Long.toString(value);
+    }
+
+    private static String millis(long nanos) {
+        return nanos < 0 ? null : String.format(Locale.ROOT, "%.1f", nanos / 1000000.0);
+    }
+
+    void print(PrintStream out) {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(HEADERS);
+        stages.forEach(stage -> rows.add(stage.getValues(false)));
+        int[] widths = new int[HEADERS.length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], row[i] == null ? 1 : row[i].length());
+            }
+        }
+        out.println();
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < row.length; i++) {
+                String value = row[i] == null ? "-" : row[i];
+                // names are left aligned, values right aligned
+                line.append(String.format(i < 2 ? "%-" + widths[i] + "s  " : "%" + widths[i] + "s  ", value));
+            }
+            out.println(line.toString().stripTrailing());
+        }
+        out.println("elapsed " + millis(System.nanoTime() - starttime) + " ms");
+    }
+
+    void writeJSON(String path) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"elapsed_ms\": ").append(millis(System.nanoTime() - starttime)).append(",\n  \"stages\": [");
+        for (int s = 0; s < stages.size(); s++) {
+            json.append(s == 0 ? "\n    {" : ",\n    {");
+            String[] values = stages.get(s).getValues(true);
+            boolean first = true;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    json.append(first ? "" : ", ").append('"').append(JSONNAMES[i]).append("\": ")
+                            .append(i < 2 ? quote(values[i]) : values[i]);
+                    first = false;
+                }
+            }
+            json.append('}');
+        }
+        json.append("\n  ]\n}\n");
+        File f = new File(path);
+        f = f.isAbsolute() ? f : new File(Configuration.getDefault().getOutputDir(), path);
+        try {
+            Files.writeString(f.toPath(), json, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException("Failure when writing statistics file - " + ex.getMessage());
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' ->
+                    quoted.append("\\\"");
+                case '\\' ->
+                    quoted.append("\\\\");
+                default -> {
+                    if (c < ' ') {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -24,14 +24,22 @@ import uk.theretiredprogrammer.reportwriter.language.functions.And;
 import uk.theretiredprogrammer.reportwriter.language.functions.Boolean2String;
 import uk.theretiredprogrammer.reportwriter.language.functions.BooleanLiteral;
 import uk.theretiredprogrammer.reportwriter.language.functions.Concatonate;
+import uk.theretiredprogrammer.reportwriter.language.functions.Contains;
 import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.EndsWith;
 import uk.theretiredprogrammer.reportwriter.language.functions.Equals;
 import uk.theretiredprogrammer.reportwriter.language.functions.EqualsIgnoreCase;
+import uk.theretiredprogrammer.reportwriter.language.functions.GreaterThan;
+import uk.theretiredprogrammer.reportwriter.language.functions.GreaterThanOrEquals;
+import uk.theretiredprogrammer.reportwriter.language.functions.LessThan;
+import uk.theretiredprogrammer.reportwriter.language.functions.LessThanOrEquals;
 import uk.theretiredprogrammer.reportwriter.language.functions.Not;
 import uk.theretiredprogrammer.reportwriter.language.functions.NotEquals;
 import uk.theretiredprogrammer.reportwriter.language.functions.NotEqualsIgnoreCase;
 import uk.theretiredprogrammer.reportwriter.language.functions.Or;
 import uk.theretiredprogrammer.reportwriter.language.Property;
+import uk.theretiredprogrammer.reportwriter.language.functions.RegexMatch;
+import uk.theretiredprogrammer.reportwriter.language.functions.StartsWith;
 import uk.theretiredprogrammer.reportwriter.language.functions.CmdParamValue;
 import uk.theretiredprogrammer.reportwriter.language.functions.String2Boolean;
 import uk.theretiredprogrammer.reportwriter.language.functions.EnvValue;
@@ -47,14 +55,22 @@ public class SCM_ExpressionLanguage extends Language {
             new SyntaxTreeItem("TRUE", new BooleanLiteral(true)),
             new SyntaxTreeItem("parameter", new Operator("Parameter value", PrecedenceGroup.MONADIC, CmdParamValue::reduce)),
             new SyntaxTreeItem("env", new Operator("Env value", PrecedenceGroup.MONADIC, EnvValue::reduce)),
-            new SyntaxTreeItem("sys", new Operator("System Property value", PrecedenceGroup.MONADIC, SysValue::reduce)),});
+            new SyntaxTreeItem("sys", new Operator("System Property value", PrecedenceGroup.MONADIC, SysValue::reduce)),
+            new SyntaxTreeItem("startswith", new Operator("startswith", PrecedenceGroup.EQ, StartsWith::reduce)),
+            new SyntaxTreeItem("endswith", new Operator("endswith", PrecedenceGroup.EQ, EndsWith::reduce)),
+            new SyntaxTreeItem("contains", new Operator("contains", PrecedenceGroup.EQ, Contains::reduce)),});
         setSyntaxTreeOperators(new SyntaxTreeItem[]{
             new SyntaxTreeItem("!=~", new Operator("!=~", PrecedenceGroup.EQ, NotEqualsIgnoreCase::reduce)),
             new SyntaxTreeItem("&&", new Operator("&&", PrecedenceGroup.AND, And::reduce)),
             new SyntaxTreeItem("||", new Operator("||", PrecedenceGroup.OR, Or::reduce)),
             new SyntaxTreeItem("==", new Operator("==", PrecedenceGroup.EQ, Equals::reduce)),
             new SyntaxTreeItem("=~", new Operator("=~", PrecedenceGroup.EQ, EqualsIgnoreCase::reduce)),
+            new SyntaxTreeItem("~~", new Operator("~~", PrecedenceGroup.EQ, RegexMatch::reduce)),
             new SyntaxTreeItem("!=", new Operator("!=", PrecedenceGroup.EQ, NotEquals::reduce)),
+            new SyntaxTreeItem("<=", new Operator("<=", PrecedenceGroup.EQ, LessThanOrEquals::reduce)),
+            new SyntaxTreeItem(">=", new Operator(">=", PrecedenceGroup.EQ, GreaterThanOrEquals::reduce)),
+            new SyntaxTreeItem("<", new Operator("<", PrecedenceGroup.EQ, LessThan::reduce)),
+            new SyntaxTreeItem(">", new Operator(">", PrecedenceGroup.EQ, GreaterThan::reduce)),
             new SyntaxTreeItem("!", new Operator("!", PrecedenceGroup.MONADIC, Not::reduce)),
             new SyntaxTreeItem("+", new Operator("+", PrecedenceGroup.DIADIC, Concatonate::reduce)),
             new SyntaxTreeItem("[", new Operator("[", PrecedenceGroup.EXPBRA, ExpressionList::reduce_s)),
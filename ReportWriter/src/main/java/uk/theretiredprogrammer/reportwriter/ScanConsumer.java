@@ -0,0 +1,223 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetSorter;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.functions.And;
+import uk.theretiredprogrammer.reportwriter.language.functions.ColumnEquals;
+
+// a statement which reads every row of its source dataset, as part of a shared scan.
+// The filter, sort_by, limit and top parameters are common to all such statements;
+// limit keeps the first rows (in sort_by order if given), top keeps the highest
+// rows in sort_by order, highest first.
+abstract class ScanConsumer {
+
+    private String using;
+    private final BooleanExpression filterexpression;
+    // the filters of any views folded into this consumer (see fold)
+    private BooleanExpression sourcefilterexpression;
+    private BooleanExpression filter;
+    private final ExpressionList sortfields;
+    private final int limit;
+    private final boolean descending;
+    private RunStatistics.Stage statistics;
+
+    ScanConsumer(ExpressionMap parameters, String statementname) {
+        this.using = DataTypes.getRequiredString(parameters, "using", statementname);
+        this.filterexpression = DataTypes.isBooleanExpression(parameters, "filter");
+        this.sortfields = DataTypes.isExpressionList(parameters, "sort_by");
+        int top = DataTypes.isPositiveInteger(parameters, "top");
+        if (top > 0) {
+            if (sortfields == null || parameters.get("limit") != null) {
+                throw new RuntimeException("top parameter requires sort_by, and cannot be used with limit, in " + statementname + " statement " + parameters);
+            }
+            this.limit = top;
+            this.descending = true;
+        } else {
+            this.limit = DataTypes.isPositiveInteger(parameters, "limit");
+            this.descending = false;
+        }
+    }
+
+    String getUsing() {
+        return using;
+    }
+
+    // the datasets created when this consumer finishes
+    List<String> produces() {
+        return List.of();
+    }
+
+    // the datasets, other than the source, needed by this consumer
+    List<String> requires() {
+        return List.of();
+    }
+
+    void start(StoredDataSet source) {
+        compileFilter(source.getColumnIndex());
+    }
+
+    void compileFilter(ColumnIndex columnindex) {
+        BooleanExpression expression = and(sourcefilterexpression, filterexpression);
+        filter = expression == null ? null : expression.compile(columnindex);
+    }
+
+    // true if this just filters the rows of its source, so that it can be folded
+    // into a consumer rather than being stored
+    boolean isView() {
+        return false;
+    }
+
+    // the consumer reads the view's source, applying the view's filter before its own;
+    // the consumer must not join its rows (its filter applies to the source rows)
+    void fold(ScanConsumer view) {
+        using = view.using;
+        sourcefilterexpression = and(and(view.sourcefilterexpression, view.filterexpression), sourcefilterexpression);
+    }
+
+    private static BooleanExpression and(BooleanExpression lhs, BooleanExpression rhs) {
+        return lhs == null ? rhs : rhs == null ? lhs : new And(lhs, rhs);
+    }
+
+    // plans the filter using the equality indexes of the source. The AND chain
+    // is split into its terms; the term comparing a column with a constant which
+    // matches the fewest rows gives the candidate rows, and the filter is reduced
+    // to the remaining terms. Returns null if there is no such term, so that
+    // every row must be tested.
+    int[] planFilter(StoredDataSet source) {
+        if (filter == null) {
+            return null;
+        }
+        List<BooleanExpression> terms = new ArrayList<>();
+        addTerms(filter, terms);
+        int selected = -1;
+        int[] candidates = null;
+        for (int i = 0; i < terms.size(); i++) {
+            int[] rows = getIndexedRows(source, terms.get(i));
+            if (rows != null && (candidates == null || rows.length < candidates.length)) {
+                selected = i;
+                candidates = rows;
+            }
+        }
+        if (candidates != null) {
+            terms.remove(selected);
+            filter = terms.stream().reduce((lhs, rhs) -> new And(lhs, rhs)).orElse(null);
+        }
+        return candidates;
+    }
+
+    private void addTerms(BooleanExpression expression, List<BooleanExpression> terms) {
+        if (expression instanceof And and) {
+            addTerms(and.getLhs(), terms);
+            addTerms(and.getRhs(), terms);
+        } else {
+            terms.add(expression);
+        }
+    }
+
+    private int[] getIndexedRows(StoredDataSet source, BooleanExpression term) {
+        if (term instanceof ColumnEquals columnequals && !columnequals.isNegated()
+                && columnequals.getField().getColumnIndex() == source.getColumnIndex()) {
+            return source.getMatchingRows(columnequals.getField().getColumn(), columnequals.getValue(), columnequals.isIgnoreCase());
+        }
+        return null;
+    }
+
+    void setStatistics(RunStatistics.Stage statistics) {
+        this.statistics = statistics;
+        statistics.setScanned();
+    }
+
+    // null unless statistics are being collected
+    RunStatistics.Stage getStatistics() {
+        return statistics;
+    }
+
+    StoredDataSet sortTimed(Supplier<StoredDataSet> sort) {
+        long start = System.nanoTime();
+        StoredDataSet sorted = sort.get();
+        if (statistics != null) {
+            statistics.addSortTime(System.nanoTime() - start);
+        }
+        return sorted;
+    }
+
+    boolean isSorted() {
+        return sortfields != null;
+    }
+
+    // 0 if there is no limit
+    int getLimit() {
+        return limit;
+    }
+
+    // true once no further rows are required, so that the scan can stop early
+    boolean isComplete() {
+        return false;
+    }
+
+    DataSetSorter createSorter(ColumnIndex columnindex) {
+        return new DataSetSorter(columnindex, sortfields, limit, descending);
+    }
+
+    // sorts and limits a dataset created after the scan (eg by aggregation)
+    StoredDataSet order(StoredDataSet dataset) {
+        if (sortfields != null) {
+            DataSetSorter sorter = createSorter(dataset.getColumnIndex());
+            dataset.getStream().forEach(datarecord -> sorter.add(datarecord));
+            return sorter.sort();
+        }
+        if (limit == 0 || dataset.size() <= limit) {
+            return dataset;
+        }
+        StoredDataSet limited = new StoredDataSet(dataset.getColumnIndex());
+        for (int row = 0; row < limit; row++) {
+            limited.insertDataRecord(dataset.getDataRecord(row));
+        }
+        return limited;
+    }
+
+    boolean test(DataRecord datarecord) {
+        return filter == null || filter.evaluate(datarecord);
+    }
+
+    // the rows of a block of the source which pass the filter (see BlockSelector)
+    void select(StoredDataSet source, int start, long[] in, long[] out) {
+        if (filter == null) {
+            System.arraycopy(in, 0, out, 0, in.length);
+        } else {
+            filter.select(source, start, in, out);
+        }
+    }
+
+    abstract void accept(DataRecord datarecord);
+
+    abstract void finish();
+
+    // called if the scan fails, to release anything opened by the consumer
+    void close() {
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+
+// a single pass over a source dataset, pushing each row through the filter of
+// every consumer which uses that dataset. The rows are filtered in blocks, with
+// the rows of a block held as a bitmap (see BlockSelector). Consumers whose
+// filter can be answered from an equality index are just given the candidate rows.
+// Consumers needing no further rows (a limit has been reached) are dropped after
+// each block, and the scan stops once there are none left.
+class SharedScan implements Runnable {
+
+    private static final int BLOCKSIZE = 1024;
+
+    private final StoredDataSet source;
+    private final ScanConsumer[] consumers;
+    private final long[] in = new long[BLOCKSIZE / 64];
+    private final long[] out = new long[BLOCKSIZE / 64];
+
+    SharedScan(StoredDataSet source, List<ScanConsumer> consumers) {
+        this.source = source;
+        this.consumers = consumers.toArray(new ScanConsumer[0]);
+    }
+
+    @Override
+    public void run() {
+        try {
+            scan();
+        } catch (RuntimeException | Error ex) {
+            // releases the output of any consumer which has not finished
+            for (ScanConsumer consumer : consumers) {
+                try {
+                    consumer.close();
+                } catch (RuntimeException closeex) {
+                    ex.addSuppressed(closeex);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private void scan() {
+        List<ScanConsumer> scanning = new ArrayList<>();
+        for (ScanConsumer consumer : consumers) {
+            consumer.start(source);
+            int[] candidates = consumer.planFilter(source);
+            if (candidates == null) {
+                scanning.add(consumer);
+            } else {
+                scanCandidates(consumer, candidates);
+            }
+        }
+        int size = source.size();
+        for (int start = 0; start < size && !scanning.isEmpty(); start += BLOCKSIZE) {
+            int count = Math.min(BLOCKSIZE, size - start);
+            for (int word = 0; word < in.length; word++) {
+                int bits = Math.max(0, Math.min(64, count - word * 64));
+                in[word] = bits == 64 ? -1L : (1L << bits) - 1;
+            }
+            for (ScanConsumer consumer : scanning) {
+                selectAndAccept(consumer, start);
+            }
+            scanning.removeIf(consumer -> consumer.isComplete());
+        }
+        for (ScanConsumer consumer : consumers) {
+            consumer.finish();
+        }
+    }
+
+    private void scanCandidates(ScanConsumer consumer, int[] candidates) {
+        int i = 0;
+        while (i < candidates.length && !consumer.isComplete()) {
+            int start = candidates[i] / BLOCKSIZE * BLOCKSIZE;
+            Arrays.fill(in, 0);
+            while (i < candidates.length && candidates[i] < start + BLOCKSIZE) {
+                int offset = candidates[i++] - start;
+                in[offset / 64] |= 1L << (offset % 64);
+            }
+            selectAndAccept(consumer, start);
+        }
+    }
+
+    private void selectAndAccept(ScanConsumer consumer, int start) {
+        RunStatistics.Stage statistics = consumer.getStatistics();
+        if (statistics == null) {
+            consumer.select(source, start, in, out);
+            accept(consumer, start);
+            return;
+        }
+        long starttime = System.nanoTime();
+        consumer.select(source, start, in, out);
+        long selectedtime = System.nanoTime();
+        accept(consumer, start);
+        statistics.addFilterTime(selectedtime - starttime);
+        statistics.addWriteTime(System.nanoTime() - selectedtime);
+        for (long word : in) {
+            statistics.addRowsIn(Long.bitCount(word));
+        }
+    }
+
+    private void accept(ScanConsumer consumer, int start) {
+        for (int word = 0; word < out.length; word++) {
+            long selected = out[word];
+            while (selected != 0) {
+                int bit = Long.numberOfTrailingZeros(selected);
+                consumer.accept(source.getDataRecord(start + word * 64 + bit));
+                selected &= selected - 1;
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package uk.theretiredprogrammer.reportwriter.configuration;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -32,6 +33,15 @@ public class ArgConfiguration {
     private boolean list = false;
     private boolean debuglist = false;
     private boolean version = false;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int sortlimit = 1000000;
+    private int offheap = 0;
+    private boolean cache = false;
+    private boolean watch = false;
+    private boolean daemon = false;
+    private String socket = null;
+    private boolean stats = false;
+    private String statsfile = null;
 
     public Properties parseArgs(String[] args) {
         extractArgCommands(args);
@@ -59,6 +69,10 @@ public class ArgConfiguration {
         return commandparameters.get(index - 1);
     }
 
+    public List<String> getCommandParameters() {
+        return commandparameters;
+    }
+
     public boolean isClearCmd() {
         return clear;
     }
@@ -79,6 +93,45 @@ public class ArgConfiguration {
         return version;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getSortLimit() {
+        return sortlimit;
+    }
+
+    // in bytes - by default a quarter of the maximum heap
+    public long getOffHeapThreshold() {
+        return offheap > 0 ? offheap * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    public boolean isCacheCmd() {
+        return cache;
+    }
+
+    public boolean isWatchCmd() {
+        return watch;
+    }
+
+    public boolean isDaemonCmd() {
+        return daemon;
+    }
+
+    // the daemon's socket - by default in a directory only the user can access
+    public Path getSocket() {
+        return socket != null ? Path.of(socket) : Path.of(System.getProperty("user.home"), ".reportwriter-daemon", "daemon.sock");
+    }
+
+    public boolean isStatsCmd() {
+        return stats || statsfile != null;
+    }
+
+    // the file to which the statistics are also written as JSON, or null
+    public String getStatsFile() {
+        return statsfile;
+    }
+
     private void extractArgCommands(String[] args) {
         ArgReader argrdr = new ArgReader(args);
         while (argrdr.more()) {
@@ -100,6 +153,24 @@ public class ArgConfiguration {
                     debuglist = true;
                 case "--version" ->
                     version = true;
+                case "--threads" ->
+                    threads = getPositiveInteger(argrdr.next());
+                case "--sortlimit" ->
+                    sortlimit = getPositiveInteger(argrdr.next());
+                case "--offheap" ->
+                    offheap = getPositiveInteger(argrdr.next());
+                case "--cache" ->
+                    cache = true;
+                case "--watch" ->
+                    watch = true;
+                case "--daemon" ->
+                    daemon = true;
+                case "--socket" ->
+                    socket = argrdr.next();
+                case "--stats" ->
+                    stats = true;
+                case "--statsfile" ->
+                    statsfile = argrdr.next();
                 case "-dd" ->
                     downloaddir = argrdr.next();
                 case "-pd" ->
@@ -116,6 +187,24 @@ public class ArgConfiguration {
                     debuglist = true;
                 case "-v" ->
                     version = true;
+                case "-t" ->
+                    threads = getPositiveInteger(argrdr.next());
+                case "-sl" ->
+                    sortlimit = getPositiveInteger(argrdr.next());
+                case "-oh" ->
+                    offheap = getPositiveInteger(argrdr.next());
+                case "-ca" ->
+                    cache = true;
+                case "-w" ->
+                    watch = true;
+                case "-dm" ->
+                    daemon = true;
+                case "-so" ->
+                    socket = argrdr.next();
+                case "-st" ->
+                    stats = true;
+                case "-sf" ->
+                    statsfile = argrdr.next();
                 default -> {
                     definitionfile = p1;
                     commandparameters.clear();
@@ -127,6 +216,17 @@ public class ArgConfiguration {
         }
     }
 
+    private int getPositiveInteger(String arg) {
+        try {
+            int value = Integer.parseInt(arg);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException ex) {
+        }
+        throw new RPTWTRRuntimeException("Command Line: positive integer expected - " + arg);
+    }
+
     private class ArgReader {
 
         private final String[] args;
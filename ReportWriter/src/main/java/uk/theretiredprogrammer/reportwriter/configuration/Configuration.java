@@ -18,24 +18,45 @@ package uk.theretiredprogrammer.reportwriter.configuration;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.PrintStream;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import uk.theretiredprogrammer.reportwriter.RPTWTRException;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
 
 public class Configuration {
 
     private static Configuration configuration;
+    // the configuration of a daemon request - inherited by the threads it starts
+    private static final InheritableThreadLocal<Configuration> requestconfiguration = new InheritableThreadLocal<>();
 
     public static void create(String args[]) throws RPTWTRException {
-        configuration = new Configuration();
+        configuration = new Configuration(System.getProperty("user.dir"), System.getenv(), System.out, System.err);
         configuration.loadconfiguration(args);
     }
 
+    public static Configuration createRequest(String args[], String workingdir, Map<String, String> envmap, PrintStream out, PrintStream err) throws RPTWTRException {
+        Configuration requestconfig = new Configuration(workingdir, envmap, out, err);
+        requestconfiguration.set(requestconfig);
+        requestconfig.loadconfiguration(args);
+        return requestconfig;
+    }
+
+    public static void endRequest() {
+        requestconfiguration.remove();
+    }
+
     public static Configuration getDefault() {
-        return configuration;
+        Configuration requestconfig = requestconfiguration.get();
+        return requestconfig == null ? configuration : requestconfig;
     }
 
+    private final String workingdir;
+    private final PrintStream out;
+    private final PrintStream err;
+
     private ArgConfiguration argconfiguration;
 
     private Properties systemproperties;
@@ -43,14 +64,20 @@ public class Configuration {
     private Properties userproperties;
     private Properties argproperties;
 
-    private Map<String, String> envmap;
+    private final Map<String, String> envmap;
+    // the names of the environment values used by the definition
+    private final Set<String> environmentused = ConcurrentHashMap.newKeySet();
 
     private File downloaddir;
     private File projectdir;
     private File outputdir;
     private File reportfile;
 
-    private Configuration() {
+    private Configuration(String workingdir, Map<String, String> envmap, PrintStream out, PrintStream err) {
+        this.workingdir = workingdir;
+        this.envmap = envmap;
+        this.out = out;
+        this.err = err;
     }
 
     @SuppressWarnings("UseSpecificCatch")
@@ -59,7 +86,7 @@ public class Configuration {
             argconfiguration = new ArgConfiguration();
             argproperties = argconfiguration.parseArgs(args);
             if (argconfiguration.isVersionCmd()) {
-                System.out.println("ReportWriter v1.0.1");
+                out.println("ReportWriter v1.0.1");
             }
             getSystemConfig();
             if (argconfiguration.isClearCmd()) {
@@ -71,14 +98,14 @@ public class Configuration {
                 dumpargs();
             }
             downloaddir = findDir("downloaddir", "Downloads");
-            projectdir = findDir("projectdir", systemproperties.getProperty("user.dir"));
+            projectdir = findDir("projectdir", workingdir);
             outputdir = findOutputDir();
             reportfile = findReportFile();
             if (argconfiguration.isListCmd()) {
-                System.out.println("\n Current Directory Parameters and Resulting Paths\n");
-                System.out.println("downloadir is " + getPropertyValue("downloaddir") + " expands to " + downloaddir.getCanonicalPath());
-                System.out.println("projectdir is " + getPropertyValue("projectdir") + " expands to " + projectdir.getCanonicalPath());
-                System.out.println("outputdir is " + getPropertyValue("outputdir") + " expands to " + outputdir.getCanonicalPath());
+                out.println("\n Current Directory Parameters and Resulting Paths\n");
+                out.println("downloadir is " + getPropertyValue("downloaddir") + " expands to " + downloaddir.getCanonicalPath());
+                out.println("projectdir is " + getPropertyValue("projectdir") + " expands to " + projectdir.getCanonicalPath());
+                out.println("outputdir is " + getPropertyValue("outputdir") + " expands to " + outputdir.getCanonicalPath());
             }
             if (argconfiguration.isSaveCmd()) {
                 String dd = argproperties.getProperty("downloaddir");
@@ -188,24 +215,37 @@ public class Configuration {
     }
 
     public String getEnvironmentValue(String key) {
+        environmentused.add(key);
         return envmap.get(key);
     }
 
+    public Set<String> getEnvironmentUsed() {
+        return environmentused;
+    }
+
     public ArgConfiguration getArgConfiguration() {
         return argconfiguration;
     }
 
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public PrintStream getErr() {
+        return err;
+    }
+
     private void dumpargs() {
-        System.out.println("SYSTEM PROPERTIES");
-        systemproperties.list(System.out);
-        System.out.println("ENVIRONMENT MAP");
-        envmap.entrySet().stream().forEach(e -> System.out.println(e.getKey() + "=" + e.getValue()));
-        System.out.println("ENVIRONMENT PROPERTIES");
-        envproperties.list(System.out);
-        System.out.println("USER PROPERTIES");
-        userproperties.list(System.out);
-        System.out.println("COMMAND LINE PROPERTIES");
-        argproperties.list(System.out);
+        out.println("SYSTEM PROPERTIES");
+        systemproperties.list(out);
+        out.println("ENVIRONMENT MAP");
+        envmap.entrySet().stream().forEach(e -> out.println(e.getKey() + "=" + e.getValue()));
+        out.println("ENVIRONMENT PROPERTIES");
+        envproperties.list(out);
+        out.println("USER PROPERTIES");
+        userproperties.list(out);
+        out.println("COMMAND LINE PROPERTIES");
+        argproperties.list(out);
     }
 
     private void getSystemConfig() {
@@ -213,7 +253,6 @@ public class Configuration {
     }
 
     private void getEnvConfig() {
-        envmap = System.getenv();
         envproperties = new Properties();
         String dd = envmap.get("RPTWTR_dd");
         if (dd != null) {
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// selects rows from a block of rows of a dataset. A block is held as a bitmap
+// (one bit per row, from the block's start row); the rows selected in in which
+// pass the test are set in out (which must not be in).
+public interface BlockSelector {
+
+    public static final BlockSelector NONE = (start, in, out) -> Arrays.fill(out, 0);
+
+    public void select(int start, long[] in, long[] out);
+
+    public static void select(int start, long[] in, long[] out, IntPredicate test) {
+        for (int word = 0; word < in.length; word++) {
+            long selected = in[word];
+            long result = 0;
+            while (selected != 0) {
+                int bit = Long.numberOfTrailingZeros(selected);
+                if (test.test(start + word * 64 + bit)) {
+                    result |= 1L << bit;
+                }
+                selected &= selected - 1;
+            }
+            out[word] = result;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+
+// streaming CSV tokenizer - reads the file through a FileChannel (memory mapped
+// for large files) and passes each record to the consumer as soon as it is complete.
+// The field list passed to the consumer is reused for the next record.
+class CSVReader {
+
+    private static final long MAPPEDTHRESHOLD = 16 * 1024 * 1024;
+    private static final long MAPPEDWINDOWSIZE = 256 * 1024 * 1024;
+    private static final int BUFFERSIZE = 64 * 1024;
+
+    private final File file;
+    private final Charset charset;
+
+    CSVReader(File file) {
+        this(file, Charset.defaultCharset());
+    }
+
+    CSVReader(File file, Charset charset) {
+        this.file = file;
+        this.charset = charset;
+    }
+
+    private enum State {
+        STARTOFFIELD, INQUOTEDFIELD, QUOTEINQUOTEDFIELD, INUNQUOTEDFIELD, AFTERQUOTEDFIELD
+    }
+    private State state;
+    private final List<String> tokenlist = new ArrayList<>();
+    private byte[] token = new byte[256];
+    private int tokenlength;
+    private Consumer<List<String>> consumer;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long windowstart;
+    private long linestart;
+    private int linenumber;
+    private boolean aftercr;
+    private boolean midline;
+    private long rangeend;
+    private boolean atrecordend;
+    private long stoppedat;
+
+    void read(Consumer<List<String>> consumer) throws IOException {
+        read(consumer, 0, -1);
+    }
+
+    // reads the records from start (which must be the start of a record),
+    // stopping at the first record boundary at or after end, or at the end of
+    // file if end < 0. Returns the position at which reading stopped.
+    long read(Consumer<List<String>> consumer, long start, long end) throws IOException {
+        this.consumer = consumer;
+        state = State.STARTOFFIELD;
+        tokenlength = 0;
+        linestart = start;
+        linenumber = 1;
+        aftercr = false;
+        midline = false;
+        rangeend = end;
+        atrecordend = true;
+        stoppedat = -1;
+        try ( FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel = fc;
+            long size = channel.size();
+            if (size > MAPPEDTHRESHOLD) {
+                readMapped(start, size);
+            } else {
+                readBuffered(start);
+            }
+            if (stoppedat >= 0) {
+                return stoppedat;
+            }
+            if (midline) {
+                processChar((byte) '\n');
+            }
+            if (state != State.STARTOFFIELD) {
+                throw new RPTWTRRuntimeException("Badly formatted CSV (unterminated quoted field at end of file): " + file.getPath());
+            }
+            return size;
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    // the start of the first line at or after position
+    long findLineStart(long position) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        try ( FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer linebuffer = ByteBuffer.allocate(BUFFERSIZE);
+            long bufferstart = position - 1;
+            while (fc.read(linebuffer.clear(), bufferstart) > 0) {
+                linebuffer.flip();
+                while (linebuffer.hasRemaining()) {
+                    if (linebuffer.get() == '\n') {
+                        return bufferstart + linebuffer.position();
+                    }
+                }
+                bufferstart += linebuffer.limit();
+            }
+            return fc.size();
+        }
+    }
+
+    private void readMapped(long start, long size) throws IOException {
+        windowstart = start;
+        while (windowstart < size) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowstart, Math.min(MAPPEDWINDOWSIZE, size - windowstart));
+            if (processBuffer()) {
+                return;
+            }
+            windowstart += buffer.limit();
+        }
+    }
+
+    private void readBuffered(long start) throws IOException {
+        buffer = ByteBuffer.allocate(BUFFERSIZE);
+        windowstart = start;
+        while (channel.read(buffer.clear(), windowstart) > 0) {
+            buffer.flip();
+            if (processBuffer()) {
+                return;
+            }
+            windowstart += buffer.limit();
+        }
+    }
+
+    // returns true if the end of the range has been reached
+    private boolean processBuffer() {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get(buffer.position());
+            if (rangeend >= 0 && atrecordend && !(aftercr && b == '\n') && windowstart + buffer.position() >= rangeend) {
+                stoppedat = windowstart + buffer.position();
+                return true;
+            }
+            buffer.get();
+            switch (b) {
+                case '\r' -> {
+                    aftercr = true;
+                    newline();
+                }
+                case '\n' -> {
+                    if (aftercr) {
+                        aftercr = false;
+                        linestart = windowstart + buffer.position();
+                    } else {
+                        newline();
+                    }
+                }
+                default -> {
+                    aftercr = false;
+                    midline = true;
+                    atrecordend = false;
+                    processChar(b);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void newline() {
+        midline = false;
+        processChar((byte) '\n');
+        linestart = windowstart + buffer.position();
+        linenumber++;
+    }
+
+    private void processChar(byte c) {
+        switch (state) {
+            case STARTOFFIELD -> {
+                switch (c) {
+                    case '\n' -> {
+                        addtoken();
+                        processlineoftokens();
+                    }
+                    case ',' ->
+                        addtoken();
+                    case ' ' -> {
+                    }
+                    case '"' ->
+                        state = State.INQUOTEDFIELD;
+                    default -> {
+                        append(c);
+                        state = State.INUNQUOTEDFIELD;
+                    }
+                }
+            }
+            case INQUOTEDFIELD -> {
+                if (c == '"') {
+                    state = State.QUOTEINQUOTEDFIELD;
+                } else {
+                    append(c); // includes '\n' - inserted as field content
+                }
+            }
+            case QUOTEINQUOTEDFIELD -> {
+                if (c == '"') {
+                    append(c);
+                    state = State.INQUOTEDFIELD;
+                } else {
+                    addtoken();
+                    state = State.AFTERQUOTEDFIELD;
+                    processChar(c);
+                }
+            }
+            case INUNQUOTEDFIELD -> {
+                switch (c) {
+                    case '\n' -> {
+                        addtoken();
+                        processlineoftokens();
+                    }
+                    case ',' -> {
+                        state = State.STARTOFFIELD;
+                        addtoken();
+                    }
+                    default ->
+                        append(c);
+                }
+            }
+            case AFTERQUOTEDFIELD -> {
+                switch (c) {
+                    case '\n' ->
+                        processlineoftokens();
+                    case ',' ->
+                        state = State.STARTOFFIELD;
+                    case ' ' -> {
+                    }
+                    default ->
+                        throw new RPTWTRRuntimeException("Badly formatted CSV (extra text after closing quote): line "
+                                + linenumber + ": " + getCurrentLine());
+                }
+            }
+        }
+    }
+
+    private void append(byte c) {
+        if (tokenlength == token.length) {
+            byte[] newtoken = new byte[token.length * 2];
+            System.arraycopy(token, 0, newtoken, 0, tokenlength);
+            token = newtoken;
+        }
+        token[tokenlength++] = c;
+    }
+
+    private void addtoken() {
+        tokenlist.add(new String(token, 0, tokenlength, charset));
+        tokenlength = 0;
+    }
+
+    private void processlineoftokens() {
+        consumer.accept(tokenlist);
+        tokenlist.clear();
+        state = State.STARTOFFIELD;
+        atrecordend = true;
+    }
+
+    // only used when reporting errors, so simply re-read the line from the file
+    private String getCurrentLine() {
+        try {
+            ByteBuffer linebuffer = ByteBuffer.allocate(1024);
+            channel.read(linebuffer, linestart);
+            linebuffer.flip();
+            int length = 0;
+            while (length < linebuffer.limit() && linebuffer.get(length) != '\n' && linebuffer.get(length) != '\r') {
+                length++;
+            }
+            return new String(linebuffer.array(), 0, length, charset);
+        } catch (IOException ex) {
+            return "<unreadable>";
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// CSV record writer - encodes each value straight into a reusable byte buffer,
+// quoting it and doubling any quotes in the same pass over its characters.
+// UTF-8 is encoded directly; any other default charset is encoded per value.
+class CSVWriter {
+
+    private static final int BUFFERSIZE = 256 * 1024;
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final boolean utf8;
+    private final byte[] lineseparator;
+    private final byte[] buffer = new byte[BUFFERSIZE];
+    private int position = 0;
+
+    CSVWriter(OutputStream out) {
+        this(out, Charset.defaultCharset());
+    }
+
+    CSVWriter(OutputStream out, Charset charset) {
+        this.out = out;
+        this.charset = charset;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.lineseparator = System.lineSeparator().getBytes(charset);
+    }
+
+    void writeRecord(DataRecord record) throws IOException {
+        int size = record.size();
+        for (int column = 0; column < size; column++) {
+            if (column > 0) {
+                writeByte(',');
+            }
+            writeQuoted(record.get(column));
+        }
+        writeBytes(lineseparator);
+    }
+
+    void writeLine(String line) throws IOException {
+        writeBytes(line.getBytes(charset));
+        writeBytes(lineseparator);
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        writeByte('"');
+        if (!utf8) {
+            writeBytes(value.replace("\"", "\"\"").getBytes(charset));
+        } else {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                if (position + 4 > BUFFERSIZE) {
+                    flushBuffer();
+                }
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c == '"') {
+                        buffer[position++] = '"';
+                    }
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codepoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codepoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codepoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codepoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codepoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // an unpaired surrogate is replaced, as String.getBytes does
+                    buffer[position++] = '?';
+                } else {
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == BUFFERSIZE) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > BUFFERSIZE - position) {
+            flushBuffer();
+            if (bytes.length > BUFFERSIZE) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
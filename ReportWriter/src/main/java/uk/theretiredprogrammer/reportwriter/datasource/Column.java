@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.function.Predicate;
+
+public abstract class Column {
+
+    protected int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public ColumnType getType() {
+        return ColumnType.STRING;
+    }
+
+    public abstract String get(int row);
+
+    public abstract void add(String value);
+
+    public void add(Column from, int row) {
+        add(from.get(row));
+    }
+
+    public void addAll(Column from) {
+        for (int row = 0; row < from.size(); row++) {
+            add(from, row);
+        }
+    }
+
+    // a selector for the rows whose value equals the value
+    public BlockSelector equalsSelector(String value, boolean ignorecase) {
+        return (start, in, out) -> BlockSelector.select(start, in, out,
+                row -> ignorecase ? get(row).equalsIgnoreCase(value) : get(row).equals(value));
+    }
+
+    // a selector for the rows whose value passes the test
+    public BlockSelector matchSelector(Predicate<String> test) {
+        return (start, in, out) -> BlockSelector.select(start, in, out, row -> test.test(get(row)));
+    }
+
+    public long getLong(int row) {
+        return getType().parseLong(get(row));
+    }
+
+    public double getDouble(int row) {
+        return getType().parseDouble(get(row));
+    }
+
+    int getScale(int row) {
+        return DecimalColumn.scaleOf(get(row));
+    }
+
+    // an estimate of the heap used by the column's values (typed columns hold a
+    // primitive per row)
+    long getHeapSize() {
+        return size * 8L;
+    }
+
+    // only string columns are held off heap, as typed columns are a single array
+    void moveOffHeap() {
+    }
+
+    boolean isOffHeap() {
+        return false;
+    }
+
+    // the column's values, as stored in a dataset cache
+    abstract void write(DataOutputStream out) throws IOException;
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the header list (and column types) of a dataset, mapped once to column
+// positions and shared by all records of that dataset
+public class ColumnIndex {
+
+    public static final ColumnIndex EMPTY = new ColumnIndex(List.of());
+
+    private final List<String> headers;
+    private final List<ColumnType> types;
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    public ColumnIndex(List<String> headers) {
+        this(headers, Collections.nCopies(headers.size(), ColumnType.STRING));
+    }
+
+    public ColumnIndex(List<String> headers, List<ColumnType> types) {
+        this.headers = headers;
+        this.types = types;
+        for (int i = 0; i < headers.size(); i++) {
+            positions.put(headers.get(i), i);
+        }
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public ColumnType getType(int column) {
+        return types.get(column);
+    }
+
+    public List<ColumnType> getTypes() {
+        return types;
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    public int indexOf(String name) {
+        Integer position = positions.get(name);
+        return position == null ? -1 : position;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+
+// the type of a column, as declared in the types parameter of a data statement.
+// Typed values are parsed once on loading and held as primitives (integers as
+// longs, decimals as doubles and dates as epoch days); empty values are missing.
+// The columns output each value as it was written.
+public class ColumnType {
+
+    public enum Kind {
+        STRING, INTEGER, DECIMAL, DATE
+    }
+
+    public static final long MISSINGLONG = Long.MIN_VALUE;
+
+    public static final ColumnType STRING = new ColumnType(Kind.STRING, null, "string");
+    public static final ColumnType INTEGER = new ColumnType(Kind.INTEGER, null, "integer");
+    public static final ColumnType DECIMAL = new ColumnType(Kind.DECIMAL, null, "decimal");
+    public static final ColumnType DATE = new ColumnType(Kind.DATE, DateTimeFormatter.ISO_LOCAL_DATE, "date");
+
+    // type specifications are: string, integer, decimal, date or date <pattern>
+    public static ColumnType parse(String specification) {
+        String spec = specification.trim();
+        switch (spec) {
+            case "string" -> {
+                return STRING;
+            }
+            case "integer" -> {
+                return INTEGER;
+            }
+            case "decimal" -> {
+                return DECIMAL;
+            }
+            case "date" -> {
+                return DATE;
+            }
+            default -> {
+                if (spec.startsWith("date ")) {
+                    try {
+                        return new ColumnType(Kind.DATE, DateTimeFormatter.ofPattern(spec.substring(5).trim()), spec);
+                    } catch (IllegalArgumentException ex) {
+                        throw new RPTWTRRuntimeException("types: illegal date pattern - " + spec);
+                    }
+                }
+                throw new RPTWTRRuntimeException("types: unknown column type - " + spec);
+            }
+        }
+    }
+
+    private final Kind kind;
+    private final DateTimeFormatter dateformatter;
+    private final String specification;
+
+    private ColumnType(Kind kind, DateTimeFormatter dateformatter, String specification) {
+        this.kind = kind;
+        this.dateformatter = dateformatter;
+        this.specification = specification;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public boolean isNumeric() {
+        return kind != Kind.STRING;
+    }
+
+    public Column createColumn() {
+        return switch (kind) {
+            case STRING ->
+                new StringColumn();
+            case INTEGER ->
+                new IntegerColumn();
+            case DECIMAL ->
+                new DecimalColumn();
+            case DATE ->
+                new DateColumn(this);
+        };
+    }
+
+    // integers and dates (as epoch days)
+    public long parseLong(String value) {
+        if (value.isBlank()) {
+            return MISSINGLONG;
+        }
+        try {
+            return kind == Kind.DATE
+                    ? LocalDate.parse(value.trim(), dateformatter).toEpochDay()
+                    : Long.parseLong(value.trim());
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            throw new RPTWTRRuntimeException(specification + " value expected - was \"" + value + "\"");
+        }
+    }
+
+    public double parseDouble(String value) {
+        if (value.isBlank()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new RPTWTRRuntimeException(specification + " value expected - was \"" + value + "\"");
+        }
+    }
+
+    public String format(long value) {
+        if (value == MISSINGLONG) {
+            return "";
+        }
+        return kind == Kind.DATE ? dateformatter.format(LocalDate.ofEpochDay(value)) : Long.toString(value);
+    }
+
+    public String format(double value) {
+        return Double.isNaN(value) ? "" : BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ColumnType columntype && columntype.specification.equals(specification);
+    }
+
+    @Override
+    public int hashCode() {
+        return specification.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return specification;
+    }
+}
@@ -15,54 +15,109 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
+import java.util.AbstractList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.Stream;
 
+// either a standalone record holding its own values, or a lightweight cursor
+// onto a row of a columnar dataset; in both cases the header to column mapping
+// is shared with the dataset
 public class DataRecord {
 
-    public static final DataRecord EMPTY = new DataRecord();
+    public static final DataRecord EMPTY = new DataRecord(ColumnIndex.EMPTY, new String[0]);
 
-    private LinkedHashMap<String, String> datarecord = new LinkedHashMap<>();
-
-    private DataRecord() {
-    }
+    private final ColumnIndex columnindex;
+    private final String[] values;
+    private final Column[] columns;
+    private final int row;
 
     public DataRecord(List<String> headers, Stream<String> fields) {
-        Iterator<String> fieldI = fields.iterator();
-        Iterator<String> headerI = headers.iterator();
-        createDataRecord(headerI, fieldI);
+        this(new ColumnIndex(headers), fields.toArray(String[]::new));
     }
 
     public DataRecord(List<String> headers, List<String> fields) {
-        Iterator<String> fieldI = fields.iterator();
-        Iterator<String> headerI = headers.iterator();
-        createDataRecord(headerI, fieldI);
+        this(new ColumnIndex(headers), fields.toArray(new String[0]));
     }
 
-    private void createDataRecord(Iterator<String> headerI, Iterator<String> fieldI) {
-        while (headerI.hasNext()) {
-            if (!fieldI.hasNext()) {
-                throw new RuntimeException("Data Record: number of headers greater than number of fields");
-            }
-            datarecord.put(headerI.next(), fieldI.next());
+    public DataRecord(ColumnIndex columnindex, String[] values) {
+        checkFieldCount(columnindex.size(), values.length);
+        this.columnindex = columnindex;
+        this.values = values;
+        this.columns = null;
+        this.row = 0;
+    }
+
+    DataRecord(ColumnIndex columnindex, Column[] columns, int row) {
+        this.columnindex = columnindex;
+        this.values = null;
+        this.columns = columns;
+        this.row = row;
+    }
+
+    static void checkFieldCount(int headercount, int fieldcount) {
+        if (headercount > fieldcount) {
+            throw new RuntimeException("Data Record: number of headers greater than number of fields");
         }
-        if (fieldI.hasNext()) {
+        if (headercount < fieldcount) {
             throw new RuntimeException("Data Record: number of headers less than number of fields");
         }
     }
 
     public String get(String name) {
-        String value = datarecord.get(name);
-        if (value != null) {
-            return value;
+        int column = columnindex.indexOf(name);
+        if (column >= 0) {
+            return get(column);
         }
         throw new RuntimeException("DataRecord::get: missing value - name was " + name);
     }
-    
+
+    public String get(int column) {
+        return values == null ? columns[column].get(row) : values[column];
+    }
+
+    // typed access to a value, without reformatting it as a string for typed columns
+    public long getLong(int column) {
+        return values == null ? columns[column].getLong(row) : columnindex.getType(column).parseLong(values[column]);
+    }
+
+    public double getDouble(int column) {
+        return values == null ? columns[column].getDouble(row) : columnindex.getType(column).parseDouble(values[column]);
+    }
+
+    // the number of decimal places of a decimal value, or -1 if its double does
+    // not hold it exactly
+    int getScale(int column) {
+        return values == null ? columns[column].getScale(row) : DecimalColumn.scaleOf(values[column]);
+    }
+
+    Column getColumn(int column) {
+        return columns == null ? null : columns[column];
+    }
+
+    int getRow() {
+        return row;
+    }
+
+    public int size() {
+        return columnindex.size();
+    }
+
+    public ColumnIndex getColumnIndex() {
+        return columnindex;
+    }
+
     public Collection<String> getAll() {
-        return datarecord.values();
+        return new AbstractList<>() {
+            @Override
+            public String get(int column) {
+                return DataRecord.this.get(column);
+            }
+
+            @Override
+            public int size() {
+                return DataRecord.this.size();
+            }
+        };
     }
 }
@@ -20,22 +20,29 @@ import java.util.stream.Stream;
 
 public abstract class DataSet {
     
-    private final List<String> headers;
+    private final ColumnIndex columnindex;
     
     public DataSet(List<String> headers) {
-        this.headers = headers;
+        this.columnindex = new ColumnIndex(headers);
     }
     
     public DataSet(Stream<String> headers) {
-        this.headers = headers.toList();
+        this(headers.toList());
+    }
+    
+    public DataSet(ColumnIndex columnindex) {
+        this.columnindex = columnindex;
     }
     
     public List<String> getHeaders() {
-        return headers;
+        return columnindex.getHeaders();
     }
     
     public Stream<String> getHeaderStream() {
-        return headers.stream();
+        return getHeaders().stream();
     }
     
+    public ColumnIndex getColumnIndex() {
+        return columnindex;
+    }
 }
@@ -0,0 +1,826 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.language.functions.BoundDataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.Comparison;
+
+// a single pass hash aggregation of datarecords, grouped on a list of fields,
+// with the aggregates held in primitive arrays indexed by group. Groups are output
+// in the order first seen. If there are more groups than the configured sort
+// limit, partial aggregates are spilled to temporary files, sorted by group, and
+// merged; each group carries the sequence of the row which first created it, so
+// that the merged groups can be put back in the order first seen.
+public class DataSetAggregator {
+
+    private static final int MAXRUNS = 64;
+    private static final String[] FUNCTIONS = new String[]{"count", "sum", "min", "max", "distinct_count"};
+
+    private final int[] groupcolumns;
+    private final Accumulator[] accumulators;
+    private final ColumnIndex outputcolumnindex;
+    private final int grouplimit;
+    private final Map<Object, Integer> groups = new HashMap<>();
+    private final List<String[]> groupkeys = new ArrayList<>();
+    private long[] groupsequences = new long[64];
+    private long sequence;
+    private final List<File> runs = new ArrayList<>();
+
+    public DataSetAggregator(ColumnIndex columnindex, ExpressionList groupby, ExpressionList aggregates) {
+        groupcolumns = groupby == null ? new int[0] : groupby.stream()
+                .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
+                .mapToInt(fieldname -> {
+                    int column = columnindex.indexOf(fieldname);
+                    if (column < 0) {
+                        throw new RPTWTRRuntimeException("group_by: missing field - name was " + fieldname);
+                    }
+                    return column;
+                }).toArray();
+        accumulators = aggregates == null ? new Accumulator[0] : aggregates.stream()
+                .map(operand -> createAccumulator(DataTypes.isExpressionMap(operand), columnindex))
+                .toArray(Accumulator[]::new);
+        List<String> headers = new ArrayList<>();
+        List<ColumnType> types = new ArrayList<>();
+        for (int column : groupcolumns) {
+            headers.add(columnindex.getHeaders().get(column));
+            types.add(columnindex.getType(column));
+        }
+        for (Accumulator accumulator : accumulators) {
+            headers.add(accumulator.name);
+            types.add(accumulator.getType());
+        }
+        outputcolumnindex = new ColumnIndex(headers, types);
+        grouplimit = Configuration.getDefault().getArgConfiguration().getSortLimit();
+    }
+
+    private Accumulator createAccumulator(ExpressionMap aggregate, ColumnIndex columnindex) {
+        String name = DataTypes.getRequiredString(aggregate, "name", "aggregates");
+        Accumulator accumulator = null;
+        for (String function : FUNCTIONS) {
+            StringExpression expression = DataTypes.isStringExpression(aggregate, function);
+            if (expression != null) {
+                if (accumulator != null) {
+                    throw new RPTWTRRuntimeException("aggregates: only one aggregate function allowed - name was " + name, aggregate);
+                }
+                accumulator = switch (function) {
+                    case "count" ->
+                        new CountAccumulator(name, expression.compile(columnindex));
+                    case "sum" ->
+                        new SumAccumulator(name, expression.compile(columnindex));
+                    case "min" ->
+                        new MinMaxAccumulator(name, expression.compile(columnindex), false);
+                    case "max" ->
+                        new MinMaxAccumulator(name, expression.compile(columnindex), true);
+                    default ->
+                        new DistinctCountAccumulator(name, expression.compile(columnindex));
+                };
+            }
+        }
+        if (accumulator == null) {
+            throw new RPTWTRRuntimeException("aggregates: aggregate function missing - name was " + name, aggregate);
+        }
+        return accumulator;
+    }
+
+    public ColumnIndex getColumnIndex() {
+        return outputcolumnindex;
+    }
+
+    public void add(DataRecord datarecord) {
+        Object key;
+        if (groupcolumns.length == 1) {
+            key = datarecord.get(groupcolumns[0]);
+        } else {
+            String[] values = new String[groupcolumns.length];
+            for (int k = 0; k < values.length; k++) {
+                values[k] = datarecord.get(groupcolumns[k]);
+            }
+            key = Arrays.asList(values);
+        }
+        Integer group = groups.get(key);
+        if (group == null) {
+            if (groups.size() >= grouplimit) {
+                spill();
+            }
+            group = groups.size();
+            groups.put(key, group);
+            groupkeys.add(groupcolumns.length == 1 ? new String[]{(String) key} : ((List<?>) key).toArray(new String[0]));
+            setSequence(group, sequence);
+            for (Accumulator accumulator : accumulators) {
+                accumulator.newGroup(group);
+            }
+        }
+        sequence++;
+        for (Accumulator accumulator : accumulators) {
+            accumulator.add(group, datarecord);
+        }
+    }
+
+    private void setSequence(int group, long firstseen) {
+        if (group == groupsequences.length) {
+            groupsequences = Arrays.copyOf(groupsequences, group * 2);
+        }
+        groupsequences[group] = firstseen;
+    }
+
+    public StoredDataSet finish() {
+        try {
+            if (runs.isEmpty()) {
+                StoredDataSet aggregated = new StoredDataSet(outputcolumnindex);
+                for (int group = 0; group < groupkeys.size(); group++) {
+                    aggregated.insertDataRecord(outputRecord(groupkeys.get(group), group));
+                }
+                return aggregated;
+            }
+            if (!groups.isEmpty()) {
+                spill();
+            }
+            return merge();
+        } finally {
+            runs.forEach(run -> run.delete());
+            runs.clear();
+        }
+    }
+
+    private List<String> outputRecord(String[] key, int group) {
+        List<String> values = new ArrayList<>(Arrays.asList(key));
+        for (Accumulator accumulator : accumulators) {
+            values.add(accumulator.get(group));
+        }
+        return values;
+    }
+
+    private static int compareKeys(String[] key1, String[] key2) {
+        for (int k = 0; k < key1.length; k++) {
+            int cmp = key1[k].compareTo(key2[k]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private void spill() {
+        try {
+            Integer[] order = new Integer[groupkeys.size()];
+            for (int group = 0; group < order.length; group++) {
+                order[group] = group;
+            }
+            Arrays.sort(order, (g1, g2) -> compareKeys(groupkeys.get(g1), groupkeys.get(g2)));
+            File run = createRun();
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536))) {
+                for (int group : order) {
+                    writeGroup(out, groupkeys.get(group), groupsequences[group], group);
+                }
+                out.writeBoolean(false);
+            }
+            groups.clear();
+            groupkeys.clear();
+            for (Accumulator accumulator : accumulators) {
+                accumulator.clear();
+            }
+            if (runs.size() >= MAXRUNS) {
+                // limit the number of runs open at once when merging
+                List<File> merging = new ArrayList<>(runs);
+                runs.clear();
+                File merged = createRun();
+                try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 65536))) {
+                    merge(merging, (key, firstseen) -> writeGroup(out, key, firstseen, 0));
+                    out.writeBoolean(false);
+                } finally {
+                    merging.forEach(mergedrun -> mergedrun.delete());
+                }
+            }
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+    }
+
+    private File createRun() throws IOException {
+        File run = File.createTempFile("reportwriter-aggregate", ".run");
+        run.deleteOnExit();
+        runs.add(run);
+        return run;
+    }
+
+    private void writeGroup(DataOutputStream out, String[] key, long firstseen, int group) throws IOException {
+        out.writeBoolean(true);
+        for (String value : key) {
+            DataSetSorter.writeString(out, value);
+        }
+        out.writeLong(firstseen);
+        for (Accumulator accumulator : accumulators) {
+            accumulator.write(group, out);
+        }
+    }
+
+    // the merged groups are in group order, so are then put back in the order first seen
+    private StoredDataSet merge() {
+        StoredDataSet merged = new StoredDataSet(outputcolumnindex);
+        try {
+            // the sequences of the groups in memory are no longer needed, so hold those of the merged rows
+            merge(runs, (key, firstseen) -> {
+                setSequence(merged.size(), firstseen);
+                merged.insertDataRecord(outputRecord(key, 0));
+            });
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+        Integer[] order = new Integer[merged.size()];
+        for (int row = 0; row < order.length; row++) {
+            order[row] = row;
+        }
+        Arrays.sort(order, (row1, row2) -> Long.compare(groupsequences[row1], groupsequences[row2]));
+        StoredDataSet aggregated = new StoredDataSet(outputcolumnindex);
+        for (int row : order) {
+            aggregated.insertDataRecord(merged.getDataRecord(row));
+        }
+        return aggregated;
+    }
+
+    private interface MergedGroup {
+
+        void accept(String[] key, long firstseen) throws IOException;
+    }
+
+    // the partial aggregates of each group are merged into group 0 before being output,
+    // in the order the group was seen, as they would have been aggregated in memory
+    private void merge(List<File> inputs, MergedGroup output) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((r1, r2) -> {
+            int cmp = compareKeys(r1.key, r2.key);
+            return cmp != 0 ? cmp : Long.compare(r1.firstseen, r2.firstseen);
+        });
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (File run : inputs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            String[] currentkey = null;
+            long currentfirstseen = 0;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (currentkey == null || compareKeys(currentkey, reader.key) != 0) {
+                    if (currentkey != null) {
+                        output.accept(currentkey, currentfirstseen);
+                    }
+                    currentkey = reader.key;
+                    currentfirstseen = reader.firstseen;
+                    for (Accumulator accumulator : accumulators) {
+                        accumulator.newGroup(0);
+                    }
+                }
+                for (Accumulator accumulator : accumulators) {
+                    accumulator.merge(0, reader.in);
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            if (currentkey != null) {
+                output.accept(currentkey, currentfirstseen);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private class RunReader {
+
+        private final DataInputStream in;
+        private String[] key;
+        private long firstseen;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 65536));
+        }
+
+        // reads the key of the next group; its partial aggregates must then be merged
+        boolean next() throws IOException {
+            if (!in.readBoolean()) {
+                return false;
+            }
+            key = new String[groupcolumns.length];
+            for (int k = 0; k < key.length; k++) {
+                key[k] = DataSetSorter.readString(in);
+            }
+            firstseen = in.readLong();
+            return true;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    // an aggregate function; a value which is a typed column is read as a primitive
+    private static abstract class Accumulator {
+
+        protected final String name;
+        private final StringExpression expression;
+        protected final int column;
+        protected final ColumnType type;
+
+        Accumulator(String name, StringExpression expression) {
+            this.name = name;
+            this.expression = expression;
+            if (expression instanceof BoundDataRecordField field && field.getColumnType().isNumeric()) {
+                column = field.getColumn();
+                type = field.getColumnType();
+            } else {
+                column = -1;
+                type = ColumnType.STRING;
+            }
+        }
+
+        protected String value(DataRecord datarecord) {
+            return expression.evaluate(datarecord);
+        }
+
+        protected boolean isMissing(DataRecord datarecord) {
+            return switch (type.getKind()) {
+                case STRING ->
+                    value(datarecord).isEmpty();
+                case DECIMAL ->
+                    Double.isNaN(datarecord.getDouble(column));
+                default ->
+                    datarecord.getLong(column) == ColumnType.MISSINGLONG;
+            };
+        }
+
+        abstract ColumnType getType();
+
+        abstract void newGroup(int group);
+
+        abstract void add(int group, DataRecord datarecord);
+
+        abstract String get(int group);
+
+        abstract void clear();
+
+        abstract void write(int group, DataOutputStream out) throws IOException;
+
+        abstract void merge(int group, DataInputStream in) throws IOException;
+    }
+
+    private static class CountAccumulator extends Accumulator {
+
+        private long[] counts = new long[64];
+
+        CountAccumulator(String name, StringExpression expression) {
+            super(name, expression);
+        }
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.INTEGER;
+        }
+
+        @Override
+        void newGroup(int group) {
+            if (group >= counts.length) {
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            counts[group] = 0;
+        }
+
+        @Override
+        void add(int group, DataRecord datarecord) {
+            if (!isMissing(datarecord)) {
+                counts[group]++;
+            }
+        }
+
+        @Override
+        String get(int group) {
+            return Long.toString(counts[group]);
+        }
+
+        @Override
+        void clear() {
+            counts = new long[64];
+        }
+
+        @Override
+        void write(int group, DataOutputStream out) throws IOException {
+            out.writeLong(counts[group]);
+        }
+
+        @Override
+        void merge(int group, DataInputStream in) throws IOException {
+            counts[group] += in.readLong();
+        }
+    }
+
+    // integer columns are summed as longs, everything else exactly as decimals -
+    // a long of the largest number of decimal places added, or once that would
+    // overflow, a BigDecimal - and output with that number of decimal places
+    private static class SumAccumulator extends Accumulator {
+
+        private static final long[] POWERSOFTEN = new long[19];
+
+        static {
+            POWERSOFTEN[0] = 1;
+            for (int scale = 1; scale < POWERSOFTEN.length; scale++) {
+                POWERSOFTEN[scale] = POWERSOFTEN[scale - 1] * 10;
+            }
+        }
+
+        private final boolean integer;
+        private long[] longsums = new long[64];
+        private byte[] scales = new byte[64];
+        private BigDecimal[] bigsums = null;
+
+        SumAccumulator(String name, StringExpression expression) {
+            super(name, expression);
+            integer = type.getKind() == ColumnType.Kind.INTEGER;
+        }
+
+        @Override
+        ColumnType getType() {
+            return integer ? ColumnType.INTEGER : ColumnType.DECIMAL;
+        }
+
+        @Override
+        void newGroup(int group) {
+            if (integer) {
+                if (group >= longsums.length) {
+                    longsums = Arrays.copyOf(longsums, longsums.length * 2);
+                }
+                longsums[group] = 0;
+            } else {
+                if (group >= longsums.length) {
+                    longsums = Arrays.copyOf(longsums, longsums.length * 2);
+                    scales = Arrays.copyOf(scales, longsums.length);
+                    if (bigsums != null) {
+                        bigsums = Arrays.copyOf(bigsums, longsums.length);
+                    }
+                }
+                longsums[group] = 0;
+                scales[group] = 0;
+                if (bigsums != null) {
+                    bigsums[group] = null;
+                }
+            }
+        }
+
+        @Override
+        void add(int group, DataRecord datarecord) {
+            if (integer) {
+                long value = datarecord.getLong(column);
+                if (value != ColumnType.MISSINGLONG) {
+                    longsums[group] += value;
+                }
+            } else {
+                // a value whose scale is known is exactly held by its double
+                String text = null;
+                try {
+                    if (column < 0) {
+                        text = value(datarecord);
+                        if (text.isBlank()) {
+                            return;
+                        }
+                        int scale = DecimalColumn.scaleOf(text);
+                        if (scale >= 0) {
+                            add(group, DecimalColumn.unscaled(ColumnType.DECIMAL.parseDouble(text), scale), scale);
+                            return;
+                        }
+                    } else {
+                        double value = datarecord.getDouble(column);
+                        if (Double.isNaN(value)) {
+                            return;
+                        }
+                        int scale = datarecord.getScale(column);
+                        if (scale >= 0) {
+                            add(group, DecimalColumn.unscaled(value, scale), scale);
+                            return;
+                        }
+                        text = datarecord.get(column);
+                    }
+                    add(group, new BigDecimal(text.trim()));
+                } catch (NumberFormatException ex) {
+                    throw new RPTWTRRuntimeException("aggregates: sum " + name + ": decimal value expected - was \"" + text + "\"");
+                } catch (RPTWTRRuntimeException ex) {
+                    throw new RPTWTRRuntimeException("aggregates: sum " + name + ": " + ex.getMessage());
+                }
+            }
+        }
+
+        private void add(int group, long unscaled, int scale) {
+            if (bigsums != null && bigsums[group] != null) {
+                bigsums[group] = bigsums[group].add(BigDecimal.valueOf(unscaled, scale));
+                return;
+            }
+            try {
+                int groupscale = scales[group];
+                if (scale > groupscale) {
+                    longsums[group] = Math.multiplyExact(longsums[group], powerOfTen(scale - groupscale));
+                    scales[group] = (byte) scale;
+                } else if (scale < groupscale) {
+                    unscaled = Math.multiplyExact(unscaled, powerOfTen(groupscale - scale));
+                }
+                longsums[group] = Math.addExact(longsums[group], unscaled);
+            } catch (ArithmeticException ex) {
+                if (bigsums == null) {
+                    bigsums = new BigDecimal[longsums.length];
+                }
+                // the group's sum is as it was before this value, but may have been rescaled
+                bigsums[group] = BigDecimal.valueOf(longsums[group], scales[group]).add(BigDecimal.valueOf(unscaled, scale));
+            }
+        }
+
+        private void add(int group, BigDecimal value) {
+            if (value.scale() < 0) {
+                value = value.setScale(0);
+            }
+            if (value.scale() < POWERSOFTEN.length && value.unscaledValue().bitLength() < 64) {
+                add(group, value.unscaledValue().longValue(), value.scale());
+                return;
+            }
+            if (bigsums == null) {
+                bigsums = new BigDecimal[longsums.length];
+            }
+            bigsums[group] = (bigsums[group] != null ? bigsums[group] : BigDecimal.valueOf(longsums[group], scales[group])).add(value);
+        }
+
+        private static long powerOfTen(int scale) {
+            if (scale >= POWERSOFTEN.length) {
+                throw new ArithmeticException();
+            }
+            return POWERSOFTEN[scale];
+        }
+
+        private BigDecimal getDecimal(int group) {
+            return bigsums != null && bigsums[group] != null ? bigsums[group] : BigDecimal.valueOf(longsums[group], scales[group]);
+        }
+
+        @Override
+        String get(int group) {
+            return integer ? Long.toString(longsums[group]) : getDecimal(group).toPlainString();
+        }
+
+        @Override
+        void clear() {
+            longsums = new long[64];
+            scales = new byte[64];
+            bigsums = null;
+        }
+
+        @Override
+        void write(int group, DataOutputStream out) throws IOException {
+            if (integer) {
+                out.writeLong(longsums[group]);
+            } else {
+                out.writeUTF(getDecimal(group).toString());
+            }
+        }
+
+        @Override
+        void merge(int group, DataInputStream in) throws IOException {
+            if (integer) {
+                longsums[group] += in.readLong();
+            } else {
+                add(group, new BigDecimal(in.readUTF()));
+            }
+        }
+    }
+
+    // typed columns compare as values, others as the comparison operators compare
+    private static class MinMaxAccumulator extends Accumulator {
+
+        private final boolean max;
+        private long[] longvalues = new long[64];
+        private double[] doublevalues = new double[64];
+        private String[] stringvalues = new String[64];
+
+        MinMaxAccumulator(String name, StringExpression expression, boolean max) {
+            super(name, expression);
+            this.max = max;
+        }
+
+        @Override
+        ColumnType getType() {
+            return type;
+        }
+
+        @Override
+        void newGroup(int group) {
+            if (group >= stringvalues.length) {
+                stringvalues = Arrays.copyOf(stringvalues, stringvalues.length * 2);
+            }
+            stringvalues[group] = null;
+            switch (type.getKind()) {
+                case DECIMAL -> {
+                    if (group >= doublevalues.length) {
+                        doublevalues = Arrays.copyOf(doublevalues, doublevalues.length * 2);
+                    }
+                    doublevalues[group] = Double.NaN;
+                }
+                case INTEGER, DATE -> {
+                    if (group >= longvalues.length) {
+                        longvalues = Arrays.copyOf(longvalues, longvalues.length * 2);
+                    }
+                    longvalues[group] = ColumnType.MISSINGLONG;
+                }
+            }
+        }
+
+        @Override
+        void add(int group, DataRecord datarecord) {
+            switch (type.getKind()) {
+                case STRING ->
+                    addString(group, value(datarecord));
+                case DECIMAL -> {
+                    if (addDouble(group, datarecord.getDouble(column))) {
+                        stringvalues[group] = datarecord.get(column);
+                    }
+                }
+                default -> {
+                    if (addLong(group, datarecord.getLong(column))) {
+                        stringvalues[group] = datarecord.get(column);
+                    }
+                }
+            }
+        }
+
+        private void addString(int group, String value) {
+            if (value != null && !value.isEmpty()) {
+                String current = stringvalues[group];
+                if (current == null || (max ? Comparison.compareValues(value, current) > 0 : Comparison.compareValues(value, current) < 0)) {
+                    stringvalues[group] = value;
+                }
+            }
+        }
+
+        // typed values are compared as values, but output as the value was written;
+        // true if the value replaces the group's current value
+        private boolean addDouble(int group, double value) {
+            if (!Double.isNaN(value)) {
+                double current = doublevalues[group];
+                if (Double.isNaN(current) || (max ? value > current : value < current)) {
+                    doublevalues[group] = value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean addLong(int group, long value) {
+            if (value != ColumnType.MISSINGLONG) {
+                long current = longvalues[group];
+                if (current == ColumnType.MISSINGLONG || (max ? value > current : value < current)) {
+                    longvalues[group] = value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        String get(int group) {
+            return stringvalues[group] == null ? "" : stringvalues[group];
+        }
+
+        @Override
+        void clear() {
+            longvalues = new long[64];
+            doublevalues = new double[64];
+            stringvalues = new String[64];
+        }
+
+        @Override
+        void write(int group, DataOutputStream out) throws IOException {
+            switch (type.getKind()) {
+                case DECIMAL ->
+                    out.writeDouble(doublevalues[group]);
+                case INTEGER, DATE ->
+                    out.writeLong(longvalues[group]);
+            }
+            DataSetSorter.writeString(out, stringvalues[group]);
+        }
+
+        @Override
+        void merge(int group, DataInputStream in) throws IOException {
+            switch (type.getKind()) {
+                case STRING ->
+                    addString(group, DataSetSorter.readString(in));
+                case DECIMAL -> {
+                    boolean replaced = addDouble(group, in.readDouble());
+                    String value = DataSetSorter.readString(in);
+                    if (replaced) {
+                        stringvalues[group] = value;
+                    }
+                }
+                default -> {
+                    boolean replaced = addLong(group, in.readLong());
+                    String value = DataSetSorter.readString(in);
+                    if (replaced) {
+                        stringvalues[group] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class DistinctCountAccumulator extends Accumulator {
+
+        private List<Set<String>> values = new ArrayList<>();
+
+        DistinctCountAccumulator(String name, StringExpression expression) {
+            super(name, expression);
+        }
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.INTEGER;
+        }
+
+        @Override
+        void newGroup(int group) {
+            if (group < values.size()) {
+                values.set(group, new HashSet<>());
+            } else {
+                values.add(new HashSet<>());
+            }
+        }
+
+        @Override
+        void add(int group, DataRecord datarecord) {
+            String value = value(datarecord);
+            if (!value.isEmpty()) {
+                values.get(group).add(value);
+            }
+        }
+
+        @Override
+        String get(int group) {
+            return Integer.toString(values.get(group).size());
+        }
+
+        @Override
+        void clear() {
+            values = new ArrayList<>();
+        }
+
+        @Override
+        void write(int group, DataOutputStream out) throws IOException {
+            Set<String> groupvalues = values.get(group);
+            out.writeInt(groupvalues.size());
+            for (String value : groupvalues) {
+                DataSetSorter.writeString(out, value);
+            }
+        }
+
+        @Override
+        void merge(int group, DataInputStream in) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                values.get(group).add(DataSetSorter.readString(in));
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+
+// a binary columnar snapshot of a dataset loaded from a CSV file, held in the
+// output directory. The snapshot is keyed by the canonical path, size and modified
+// time of the CSV file (and by the column types requested), so it is replaced
+// whenever the file changes. A file modified within the timestamp granularity of
+// the snapshot being taken could change again without its modified time changing,
+// so for such a file the CRC32C of its content is also checked.
+// Snapshots are memory mapped when loaded.
+class DataSetCache {
+
+    private static final int MAGIC = 0x52574334;
+    private static final String CACHEDIR = ".reportwriter-cache";
+    private static final long MAPPEDWINDOWSIZE = 256 * 1024 * 1024;
+    // the coarsest modified time resolution of the common filesystems (FAT)
+    private static final long TIMESTAMPGRANULARITY = 2000;
+
+    static boolean isEnabled() {
+        return Configuration.getDefault().getArgConfiguration().isCacheCmd();
+    }
+
+    private final File source;
+    private final String canonicalpath;
+    private final long size;
+    private final long modified;
+    private final String typesignature;
+    private final long snapshottime;
+    private final File cachefile;
+    private int contenthash;
+    private boolean hashed = false;
+
+    DataSetCache(File source, String typesignature) throws IOException {
+        this.source = source;
+        this.canonicalpath = source.getCanonicalPath();
+        this.size = source.length();
+        this.modified = source.lastModified();
+        this.typesignature = typesignature;
+        // before the file is read, so that any later change is after the snapshot time
+        this.snapshottime = System.currentTimeMillis();
+        File cachedir = new File(Configuration.getDefault().getOutputDir(), CACHEDIR);
+        this.cachefile = new File(cachedir, UUID.nameUUIDFromBytes((canonicalpath + "\n" + typesignature).getBytes(StandardCharsets.UTF_8)) + ".rwc");
+    }
+
+    // returns null if there is no valid snapshot
+    StoredDataSet load() throws IOException {
+        // the content of a recently modified file is hashed before it is read, so
+        // that the hash saved with the snapshot is never of a later content
+        if (isRacy(snapshottime)) {
+            getContentHash();
+        }
+        if (!cachefile.isFile() || cachefile.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        try ( FileChannel channel = FileChannel.open(cachefile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC
+                    || !canonicalpath.equals(readString(in))
+                    || in.getLong() != size
+                    || in.getLong() != modified
+                    || !typesignature.equals(readString(in))) {
+                return null;
+            }
+            long savedsnapshottime = in.getLong();
+            int savedcontenthash = in.getInt();
+            if (isRacy(savedsnapshottime) && savedcontenthash != getContentHash()) {
+                return null;
+            }
+            int columncount = in.getInt();
+            int rowcount = in.getInt();
+            List<String> headers = new ArrayList<>();
+            List<ColumnType> types = new ArrayList<>();
+            Column[] columns = new Column[columncount];
+            for (int column = 0; column < columncount; column++) {
+                headers.add(readString(in));
+                ColumnType type = ColumnType.parse(readString(in));
+                types.add(type);
+                columns[column] = switch (type.getKind()) {
+                    case STRING ->
+                        new StringColumn(in, rowcount);
+                    case INTEGER ->
+                        new IntegerColumn(in, rowcount);
+                    case DECIMAL ->
+                        new DecimalColumn(in, rowcount);
+                    case DATE ->
+                        new DateColumn(type, in, rowcount);
+                };
+            }
+            return new StoredDataSet(new ColumnIndex(headers, types), columns, rowcount);
+        } catch (RuntimeException ex) {
+            // a damaged snapshot is just replaced
+            return null;
+        }
+    }
+
+    void save(StoredDataSet dataset) throws IOException {
+        File cachedir = cachefile.getParentFile();
+        cachedir.mkdirs();
+        File temp = File.createTempFile("snapshot", ".tmp", cachedir);
+        try {
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536))) {
+                out.writeInt(MAGIC);
+                DataSetSorter.writeString(out, canonicalpath);
+                out.writeLong(size);
+                out.writeLong(modified);
+                DataSetSorter.writeString(out, typesignature);
+                out.writeLong(snapshottime);
+                out.writeInt(isRacy(snapshottime) ? getContentHash() : 0);
+                ColumnIndex columnindex = dataset.getColumnIndex();
+                out.writeInt(columnindex.size());
+                out.writeInt(dataset.size());
+                for (int column = 0; column < columnindex.size(); column++) {
+                    DataSetSorter.writeString(out, columnindex.getHeaders().get(column));
+                    DataSetSorter.writeString(out, columnindex.getType(column).toString());
+                    dataset.getColumn(column).write(out);
+                }
+            }
+            if (temp.length() <= Integer.MAX_VALUE) {
+                Files.move(temp.toPath(), cachefile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private boolean isRacy(long time) {
+        return modified > time - TIMESTAMPGRANULARITY;
+    }
+
+    private int getContentHash() throws IOException {
+        if (!hashed) {
+            CRC32C crc = new CRC32C();
+            try ( FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                long length = channel.size();
+                for (long position = 0; position < length; position += MAPPEDWINDOWSIZE) {
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPEDWINDOWSIZE, length - position)));
+                }
+            }
+            contenthash = (int) crc.getValue();
+            hashed = true;
+        }
+        return contenthash;
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+
+// removes duplicate datarecords, comparing either all fields or a list of key fields.
+// The keys seen are held in an open addressing table of 64 bit hashes, with the
+// key values stored in a columnar dataset, and a datarecord is output as soon as its
+// key is first seen. Once there are as many keys as the configured sort limit, the
+// table is frozen: later datarecords with a new key are spilled to temporary files,
+// partitioned by hash, and each partition is deduplicated at the finish. The
+// partitions are then merged on arrival sequence, so that first-seen order is kept.
+public class DataSetDistinct {
+
+    private static final int PARTITIONS = 64;
+
+    private final ColumnIndex columnindex;
+    private final int[] keycolumns;
+    private final ColumnIndex keyindex;
+    private final int keylimit;
+    private final KeySet keys;
+    private File[] partitions;
+    private DataOutputStream[] partitionouts;
+    private long sequence = 0;
+
+    // distinctfields null means compare all fields
+    public DataSetDistinct(ColumnIndex columnindex, ExpressionList distinctfields) {
+        this.columnindex = columnindex;
+        keycolumns = distinctfields == null ? new int[columnindex.size()] : distinctfields.stream()
+                .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
+                .mapToInt(fieldname -> {
+                    int column = columnindex.indexOf(fieldname);
+                    if (column < 0) {
+                        throw new RPTWTRRuntimeException("distinct: missing field - name was " + fieldname);
+                    }
+                    return column;
+                }).toArray();
+        if (distinctfields == null) {
+            for (int column = 0; column < keycolumns.length; column++) {
+                keycolumns[column] = column;
+            }
+        }
+        List<String> headers = new ArrayList<>();
+        for (int column : keycolumns) {
+            headers.add(columnindex.getHeaders().get(column));
+        }
+        // keys are compared as strings, so are stored untyped
+        keyindex = new ColumnIndex(headers);
+        keylimit = Configuration.getDefault().getArgConfiguration().getSortLimit();
+        keys = new KeySet();
+    }
+
+    public void add(DataRecord datarecord, Consumer<DataRecord> output) {
+        long hash = hash(datarecord);
+        if (partitions == null) {
+            if (keys.add(datarecord, hash)) {
+                output.accept(datarecord);
+                if (keys.size() >= keylimit) {
+                    createPartitions();
+                }
+            }
+        } else if (!keys.contains(datarecord, hash)) {
+            spill(datarecord, hash);
+        }
+    }
+
+    // outputs the spilled datarecords which were not duplicates
+    public void finish(Consumer<DataRecord> output) {
+        if (partitions == null) {
+            return;
+        }
+        List<File> distinctpartitions = new ArrayList<>();
+        try {
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                partitionouts[partition].close();
+                distinctpartitions.add(removeDuplicates(partitions[partition]));
+                partitions[partition].delete();
+            }
+            merge(distinctpartitions, output);
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        } finally {
+            distinctpartitions.forEach(file -> file.delete());
+            partitions = null;
+            partitionouts = null;
+        }
+    }
+
+    private long hash(DataRecord datarecord) {
+        long hash = 1;
+        for (int column : keycolumns) {
+            hash = hash * 31 + Objects.hashCode(datarecord.get(column));
+        }
+        // mix, so that both the low bits (table slot) and high bits (partition) are spread
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private void createPartitions() {
+        partitions = new File[PARTITIONS];
+        partitionouts = new DataOutputStream[PARTITIONS];
+        try {
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                partitions[partition] = createPartition();
+                partitionouts[partition] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partitions[partition]), 8192));
+            }
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+    }
+
+    private File createPartition() throws IOException {
+        File partition = File.createTempFile("reportwriter-distinct", ".part");
+        partition.deleteOnExit();
+        return partition;
+    }
+
+    private void spill(DataRecord datarecord, long hash) {
+        try {
+            write(partitionouts[(int) (hash >>> 58)], sequence++, datarecord);
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+    }
+
+    private void write(DataOutputStream out, long rowsequence, DataRecord datarecord) throws IOException {
+        out.writeLong(rowsequence);
+        for (int column = 0; column < datarecord.size(); column++) {
+            DataSetSorter.writeString(out, datarecord.get(column));
+        }
+    }
+
+    // a partition holds all occurrences of its keys, so can be deduplicated on its own;
+    // its rows are in sequence order, and so are the rows kept
+    private File removeDuplicates(File partition) throws IOException {
+        File distinctpartition = createPartition();
+        KeySet partitionkeys = new KeySet();
+        try ( PartitionReader reader = new PartitionReader(partition);  DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(distinctpartition), 65536))) {
+            while (reader.next()) {
+                if (partitionkeys.add(reader.datarecord, hash(reader.datarecord))) {
+                    write(out, reader.sequence, reader.datarecord);
+                }
+            }
+        }
+        return distinctpartition;
+    }
+
+    private void merge(List<File> inputs, Consumer<DataRecord> output) throws IOException {
+        PriorityQueue<PartitionReader> queue = new PriorityQueue<>((r1, r2) -> Long.compare(r1.sequence, r2.sequence));
+        List<PartitionReader> readers = new ArrayList<>();
+        try {
+            for (File input : inputs) {
+                PartitionReader reader = new PartitionReader(input);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                PartitionReader reader = queue.poll();
+                output.accept(reader.datarecord);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (PartitionReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private class PartitionReader implements AutoCloseable {
+
+        private final DataInputStream in;
+        private long sequence;
+        private DataRecord datarecord;
+
+        PartitionReader(File partition) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(partition), 65536));
+        }
+
+        boolean next() throws IOException {
+            try {
+                sequence = in.readLong();
+            } catch (EOFException ex) {
+                return false;
+            }
+            String[] values = new String[columnindex.size()];
+            for (int column = 0; column < values.length; column++) {
+                values[column] = DataSetSorter.readString(in);
+            }
+            datarecord = new DataRecord(columnindex, values);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    // an open addressing (linear probing) hash set of keys; a slot holds the key's
+    // hash and its row (plus 1, 0 being empty) in the dataset of key values
+    private class KeySet {
+
+        private final StoredDataSet keyvalues = new StoredDataSet(keyindex);
+        private long[] hashes = new long[1024];
+        private int[] rows = new int[1024];
+        private final List<String> key = new ArrayList<>();
+
+        int size() {
+            return keyvalues.size();
+        }
+
+        boolean contains(DataRecord datarecord, long hash) {
+            return rows[find(datarecord, hash)] != 0;
+        }
+
+        // returns false if the key was already present
+        boolean add(DataRecord datarecord, long hash) {
+            int slot = find(datarecord, hash);
+            if (rows[slot] != 0) {
+                return false;
+            }
+            key.clear();
+            for (int column : keycolumns) {
+                key.add(datarecord.get(column));
+            }
+            keyvalues.insertDataRecord(key);
+            hashes[slot] = hash;
+            rows[slot] = keyvalues.size();
+            if (keyvalues.size() * 2 > rows.length) {
+                resize();
+            }
+            return true;
+        }
+
+        private int find(DataRecord datarecord, long hash) {
+            int mask = rows.length - 1;
+            int slot = (int) hash & mask;
+            while (rows[slot] != 0 && !(hashes[slot] == hash && matches(datarecord, rows[slot] - 1))) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private boolean matches(DataRecord datarecord, int row) {
+            for (int k = 0; k < keycolumns.length; k++) {
+                if (!Objects.equals(datarecord.get(keycolumns[k]), keyvalues.getColumn(k).get(row))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void resize() {
+            long[] newhashes = new long[hashes.length * 2];
+            int[] newrows = new int[rows.length * 2];
+            int mask = newrows.length - 1;
+            for (int slot = 0; slot < rows.length; slot++) {
+                if (rows[slot] != 0) {
+                    // the keys are all different, so only an empty slot is needed
+                    int newslot = (int) hashes[slot] & mask;
+                    while (newrows[newslot] != 0) {
+                        newslot = (newslot + 1) & mask;
+                    }
+                    newhashes[newslot] = hashes[slot];
+                    newrows[newslot] = rows[slot];
+                }
+            }
+            hashes = newhashes;
+            rows = newrows;
+        }
+    }
+}
@@ -16,241 +16,338 @@
 package uk.theretiredprogrammer.reportwriter.datasource;
 
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 
 public class DataSetFromCSV {
 
+    private static final long PARALLELTHRESHOLD = 8 * 1024 * 1024;
+
     public static StoredDataSet create(String name, ExpressionMap parameters) {
         return new DataSetFromCSV().load(name, parameters);
     }
 
+    // identifies the files (and their state) which a data statement would load,
+    // or null if there are no such files
+    public static String getSourceKey(ExpressionMap parameters) {
+        DataSetFromCSV loader = new DataSetFromCSV();
+        try {
+            List<File> files = loader.getInputFiles(parameters);
+            if (files.isEmpty()) {
+                return null;
+            }
+            StringBuilder key = new StringBuilder();
+            for (File f : files) {
+                if (!f.isFile()) {
+                    return null;
+                }
+                key.append(f.getCanonicalPath()).append('|').append(f.length()).append('|').append(f.lastModified()).append('|');
+            }
+            return key.append(loader.getTypeSignature(DataTypes.isExpressionMap(parameters, "types")))
+                    .append('|').append(loader.getOptionalString(parameters, "source_column")).toString();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // the total size of the files which a data statement would load, or -1 if unknown
+    public static long getInputLength(ExpressionMap parameters) {
+        try {
+            long length = 0;
+            for (File f : new DataSetFromCSV().getInputFiles(parameters)) {
+                length += f.length();
+            }
+            return length;
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
     private StoredDataSet dataset;
 
     private StoredDataSet load(String name, ExpressionMap parameters) {
         try {
-            File f = getInputFile(parameters);
-            if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
-                System.out.println("loading " + name + " from " + f.getCanonicalPath());
+            List<File> files = getInputFiles(parameters);
+            if (files.isEmpty()) {
+                throw new RPTWTRRuntimeException("no files match the \"path\" parameter in data statement", parameters);
             }
-            try ( Reader rdr = new FileReader(f);  BufferedReader brdr = new BufferedReader(rdr)) {
-                charsource = new CharacterSource(brdr.lines().toList());
-                createDataSourceRecords(charsource);
+            ExpressionMap types = DataTypes.isExpressionMap(parameters, "types");
+            String sourcecolumn = getOptionalString(parameters, "source_column");
+            int threads = Configuration.getDefault().getArgConfiguration().getThreads();
+            if (files.size() == 1 && sourcecolumn == null) {
+                return loadFile(name, files.get(0), types, threads);
             }
-            return dataset;
+            return loadFiles(name, files, types, sourcecolumn, threads);
         } catch (IOException t) {
             throw new RPTWTRRuntimeException(t);
         }
     }
 
-    private File getInputFile(ExpressionMap parameters) throws IOException {
-        File f;
-        switch (getRequiredString(parameters, "match")) {
-            case "full" -> {
-                f = new File(getRequiredString(parameters, "path"));
-                if (f.isAbsolute()) {
-                    return f;
-                }
-                return new File(Configuration.getDefault().getDownloadDir(), f.getPath());
+    // the files are loaded concurrently, and then appended in file name order
+    private StoredDataSet loadFiles(String name, List<File> files, ExpressionMap types, String sourcecolumn, int threads) throws IOException {
+        List<Future<StoredDataSet>> loaded = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try {
+            int filethreads = Math.max(1, threads / files.size());
+            for (File f : files) {
+                loaded.add(executor.submit(() -> new DataSetFromCSV().loadFile(name, f, types, filethreads)));
             }
-            case "latest_startswith" -> {
-                String startswith = getRequiredString(parameters, "path");
-                String[] files = Configuration.getDefault().getDownloadDir().list((file, filename) -> filename.startsWith(startswith));
-                f = getResolvedLatestFile(files);
+            StoredDataSet union = null;
+            List<String> headers = null;
+            for (int i = 0; i < files.size(); i++) {
+                StoredDataSet filedataset = loaded.get(i).get();
+                if (union == null) {
+                    headers = filedataset.getHeaders();
+                    union = new StoredDataSet(getUnionColumnIndex(filedataset.getColumnIndex(), sourcecolumn));
+                } else if (!filedataset.getHeaders().equals(headers)) {
+                    throw new RPTWTRRuntimeException("Badly formatted CSV (header line differs from that of "
+                            + files.get(0).getName() + "): " + files.get(i).getCanonicalPath());
+                }
+                union.insertDataSet(sourcecolumn == null ? filedataset
+                        : withSourceColumn(filedataset, union.getColumnIndex(), files.get(i).getName()));
             }
-            default ->
-                throw new RPTWTRRuntimeException("illegal parameter value for \"match\" parameter in data statement", parameters);
+            return union;
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException runtimeexception ? runtimeexception : new RPTWTRRuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RPTWTRRuntimeException(ex);
+        } finally {
+            executor.shutdownNow();
         }
-        return f.isAbsolute() ? f : new File(Configuration.getDefault().getDownloadDir(), f.getPath());
     }
 
-    private File getResolvedLatestFile(String[] files) throws IOException {
-        long mostrecenttime = 0;
-        File mostrecentfile = null;
-        for (String file : files) {
-            File f = new File(file);
-            if (!f.isAbsolute()) {
-                f = new File(Configuration.getDefault().getDownloadDir(), f.getPath());
-            }
-            long time = Files.getLastModifiedTime(f.toPath()).to(TimeUnit.SECONDS);
-            if (time > mostrecenttime) {
-                mostrecenttime = time;
-                mostrecentfile = f;
-            }
+    private ColumnIndex getUnionColumnIndex(ColumnIndex columnindex, String sourcecolumn) {
+        if (sourcecolumn == null) {
+            return columnindex;
         }
-        return mostrecentfile;
-    }
-
-    private String getRequiredString(ExpressionMap parameters, String key) {
-        StringExpression keyparameter = DataTypes.isStringExpression(parameters, key);
-        if (keyparameter != null) {
-            return keyparameter.evaluate(DataRecord.EMPTY);
+        if (columnindex.indexOf(sourcecolumn) >= 0) {
+            throw new RPTWTRRuntimeException("source_column: duplicate field - name was " + sourcecolumn);
         }
-        throw new RPTWTRRuntimeException(key + " parameter missing in data statement", parameters);
+        List<String> headers = new ArrayList<>(columnindex.getHeaders());
+        headers.add(sourcecolumn);
+        List<ColumnType> columntypes = new ArrayList<>(columnindex.getTypes());
+        columntypes.add(ColumnType.STRING);
+        return new ColumnIndex(headers, columntypes);
     }
 
-    private CharacterSource charsource;
-
-    private enum State {
-        STARTOFFIELD, INQUOTEDFIELD, INUNQUOTEDFIELD, AFTERQUOTEDFIELD
+    private StoredDataSet withSourceColumn(StoredDataSet filedataset, ColumnIndex columnindex, String filename) {
+        Column[] columns = new Column[columnindex.size()];
+        for (int i = 0; i < columns.length - 1; i++) {
+            columns[i] = filedataset.getColumn(i);
+        }
+        StringColumn source = new StringColumn();
+        for (int row = 0; row < filedataset.size(); row++) {
+            source.add(filename);
+        }
+        columns[columns.length - 1] = source;
+        return new StoredDataSet(columnindex, columns, filedataset.size());
     }
-    private State state;
-    private List<String> tokenlist;
-    private StringBuilder token;
-    private boolean inData = false;
 
-    private void createDataSourceRecords(CharacterSource charsource) {
-        state = State.STARTOFFIELD;
-        tokenlist = new ArrayList<>();
-        token = new StringBuilder();
-        do {
-            processNextChar(charsource);
-        } while (!charsource.isEOF());
+    private StoredDataSet loadFile(String name, File f, ExpressionMap types, int threads) throws IOException {
+        DataSetCache cache = DataSetCache.isEnabled() ? new DataSetCache(f, getTypeSignature(types)) : null;
+        if (cache != null) {
+            dataset = cache.load();
+        }
+        if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
+            Configuration.getDefault().getOut().println("loading " + name + " from " + f.getCanonicalPath() + (dataset == null ? "" : " (cached)"));
+        }
+        if (dataset != null) {
+            return dataset;
+        }
+        if (threads > 1 && f.length() > PARALLELTHRESHOLD) {
+            dataset = readParallel(f, types, threads);
+        }
+        if (dataset == null) {
+            readSequential(f, types);
+        }
+        if (cache != null) {
+            cache.save(dataset);
+        }
+        return dataset;
     }
 
-    private void processlineoftokens() {
-        if (inData) {
-            dataset.insertDataRecord(tokenlist.stream());
-        } else {
-            dataset = new StoredDataSet(tokenlist);
-            inData = true;
+    private void readSequential(File f, ExpressionMap types) throws IOException {
+        new CSVReader(f).read(fields -> {
+            if (dataset == null) {
+                List<String> headers = List.copyOf(fields);
+                dataset = new StoredDataSet(new ColumnIndex(headers, getColumnTypes(headers, types)));
+            } else {
+                dataset.insertDataRecord(fields);
+            }
+        });
+        if (dataset == null) {
+            throw new RPTWTRRuntimeException("Badly formatted CSV (no header line): " + f.getCanonicalPath());
         }
-        tokenlist = new ArrayList<>();
-        state = State.STARTOFFIELD;
-        token = new StringBuilder();
     }
 
-    private void processNextChar(CharacterSource charsource) {
-        char c = charsource.getChar();
-        switch (state) {
-            case STARTOFFIELD -> {
-                switch (c) {
-                    case '\n' -> {
-                        tokenlist.add(token.toString());
-                        processlineoftokens();
-                    }
-                    case ',' -> {
-                        tokenlist.add(token.toString());
-                        token = new StringBuilder();
-                    }
-                    case ' ' -> {
-                    }
-                    case '"' ->
-                        state = State.INQUOTEDFIELD;
-                    default -> {
-                        token.append(c);
-                        state = State.INUNQUOTEDFIELD;
-                    }
-                }
-            }
-            case INQUOTEDFIELD -> {
-                switch (c) {
-                    case '\n' ->
-                        token.append('\n'); // insert as field content
-                    case '"' -> {
-                        if (charsource.peekChar() == '"') {
-                            token.append(c);
-                            charsource.getChar();
-                        } else {
-                            tokenlist.add(token.toString());
-                            token = new StringBuilder();
-                            state = State.AFTERQUOTEDFIELD;
-                        }
-                    }
-                    default ->
-                        token.append(c);
-                }
+    // the file is split into chunks which are parsed concurrently. Each chunk is
+    // assumed to start at the first line start after its split point (ie not within
+    // a quoted field); this is confirmed when the parse of the previous chunk stops
+    // at exactly that point. Returns null if that is not so, or if any chunk fails,
+    // so that the file is read sequentially (giving line accurate error messages).
+    StoredDataSet readParallel(File f, ExpressionMap types, int threads) throws IOException {
+        List<List<String>> header = new ArrayList<>();
+        long datastart = new CSVReader(f).read(fields -> header.add(List.copyOf(fields)), 0, 1);
+        if (header.isEmpty()) {
+            return null;
+        }
+        ColumnIndex columnindex = new ColumnIndex(header.get(0), getColumnTypes(header.get(0), types));
+        long size = f.length();
+        List<Long> starts = new ArrayList<>(List.of(datastart));
+        CSVReader splitter = new CSVReader(f);
+        for (int i = 1; i < threads; i++) {
+            long start = splitter.findLineStart(datastart + (size - datastart) * i / threads);
+            if (start < size && start > starts.get(starts.size() - 1)) {
+                starts.add(start);
             }
-
-            case INUNQUOTEDFIELD -> {
-                switch (c) {
-                    case '\n' -> {
-                        tokenlist.add(token.toString());
-                        processlineoftokens();
-                    }
-                    case ',' -> {
-                        state = State.STARTOFFIELD;
-                        tokenlist.add(token.toString());
-                        token = new StringBuilder();
-                    }
-                    default ->
-                        token.append(c);
-                }
+        }
+        List<StoredDataSet> chunks = new ArrayList<>();
+        List<Future<Long>> ends = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(starts.size());
+        try {
+            for (int i = 0; i < starts.size(); i++) {
+                StoredDataSet chunk = new StoredDataSet(columnindex);
+                long start = starts.get(i);
+                long end = i + 1 < starts.size() ? starts.get(i + 1) : -1;
+                chunks.add(chunk);
+                ends.add(executor.submit(() -> new CSVReader(f).read(fields -> chunk.insertDataRecord(fields), start, end)));
             }
-
-            case AFTERQUOTEDFIELD -> {
-                switch (c) {
-                    case '\n' -> {
-                        processlineoftokens();
-                    }
-                    case ',' ->
-                        state = State.STARTOFFIELD;
-                    case ' ' -> {
-                    }
-                    default ->
-                        throw new RPTWTRRuntimeException("Badly formatted CSV (extra text after closing quote): "+ charsource.getCurrentLine());
+            for (int i = 0; i < starts.size(); i++) {
+                if (ends.get(i).get() != (i + 1 < starts.size() ? starts.get(i + 1) : size)) {
+                    return null;
                 }
             }
+        } catch (ExecutionException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RPTWTRRuntimeException(ex);
+        } finally {
+            executor.shutdownNow();
         }
+        StoredDataSet parsed = chunks.get(0);
+        for (int i = 1; i < chunks.size(); i++) {
+            parsed.insertDataSet(chunks.get(i));
+        }
+        return parsed;
     }
 
-    private class CharacterSource {
-
-        private final List<String> lines;
-        private int linesindex;
-
-        private char[] currentline;
-        private int characteroffset;
-
-        private boolean atEOF = false;
-
-        public CharacterSource(List<String> lines) {
-            this.lines = lines;
-            this.linesindex = 0;
-            getnextline();
+    private String getTypeSignature(ExpressionMap types) {
+        if (types == null) {
+            return "";
         }
+        return types.entrySet().stream()
+                .map(type -> type.getKey() + "=" + DataTypes.isStringExpression(type.getValue()).evaluate(DataRecord.EMPTY))
+                .sorted()
+                .collect(Collectors.joining("\n"));
+    }
 
-        private void getnextline() {
-            if (linesindex < lines.size()) {
-                currentline = lines.get(linesindex++).toCharArray();
-                characteroffset = 0;
-            } else {
-                atEOF = true;
+    private List<ColumnType> getColumnTypes(List<String> headers, ExpressionMap types) {
+        List<ColumnType> columntypes = new ArrayList<>(Collections.nCopies(headers.size(), ColumnType.STRING));
+        if (types != null) {
+            for (Entry<String, Operand> type : types.entrySet()) {
+                int column = headers.indexOf(type.getKey());
+                if (column < 0) {
+                    throw new RPTWTRRuntimeException("types: missing field - name was " + type.getKey(), types);
+                }
+                columntypes.set(column, ColumnType.parse(DataTypes.isStringExpression(type.getValue()).evaluate(DataRecord.EMPTY)));
             }
         }
+        return columntypes;
+    }
 
-        public char getChar() {
-            if (characteroffset < currentline.length) {
-                return currentline[characteroffset++];
+    private List<File> getInputFiles(ExpressionMap parameters) throws IOException {
+        File downloaddir = Configuration.getDefault().getDownloadDir();
+        switch (getRequiredString(parameters, "match")) {
+            case "full" -> {
+                File f = new File(getRequiredString(parameters, "path"));
+                return List.of(f.isAbsolute() ? f : new File(downloaddir, f.getPath()));
+            }
+            case "latest_startswith" -> {
+                String startswith = getRequiredString(parameters, "path");
+                File f = getResolvedLatestFile(downloaddir.list((file, filename) -> filename.startsWith(startswith)));
+                return f == null ? List.of() : List.of(f.isAbsolute() ? f : new File(downloaddir, f.getPath()));
+            }
+            case "all_startswith" -> {
+                String startswith = getRequiredString(parameters, "path");
+                return getFiles(downloaddir, downloaddir.list((file, filename) -> filename.startsWith(startswith)));
             }
-            getnextline();
-            return '\n';
+            case "glob" -> {
+                File pattern = new File(getRequiredString(parameters, "path"));
+                File dir = pattern.getParentFile();
+                if (dir == null) {
+                    dir = downloaddir;
+                } else if (!dir.isAbsolute()) {
+                    dir = new File(downloaddir, dir.getPath());
+                }
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.getName());
+                return getFiles(dir, dir.list((file, filename) -> matcher.matches(Path.of(filename))));
+            }
+            default ->
+                throw new RPTWTRRuntimeException("illegal parameter value for \"match\" parameter in data statement", parameters);
         }
+    }
 
-        public char peekChar() {
-            if (characteroffset < currentline.length) {
-                return currentline[characteroffset];
-            }
-            return '\n';
+    // the files, in file name order
+    private List<File> getFiles(File dir, String[] filenames) {
+        if (filenames == null) {
+            return List.of();
         }
+        Arrays.sort(filenames);
+        return Arrays.stream(filenames)
+                .map(filename -> new File(dir, filename))
+                .filter(File::isFile)
+                .toList();
+    }
 
-        public String getCurrentLine() {
-            return lines.get(linesindex - 1);
+    private File getResolvedLatestFile(String[] files) throws IOException {
+        long mostrecenttime = 0;
+        File mostrecentfile = null;
+        for (String file : files) {
+            File f = new File(file);
+            if (!f.isAbsolute()) {
+                f = new File(Configuration.getDefault().getDownloadDir(), f.getPath());
+            }
+            long time = Files.getLastModifiedTime(f.toPath()).to(TimeUnit.SECONDS);
+            if (time > mostrecenttime) {
+                mostrecenttime = time;
+                mostrecentfile = f;
+            }
         }
+        return mostrecentfile;
+    }
 
-        public boolean isEOF() {
-            return atEOF;
+    private String getRequiredString(ExpressionMap parameters, String key) {
+        StringExpression keyparameter = DataTypes.isStringExpression(parameters, key);
+        if (keyparameter != null) {
+            return keyparameter.evaluate(DataRecord.EMPTY);
         }
+        throw new RPTWTRRuntimeException(key + " parameter missing in data statement", parameters);
+    }
+
+    private String getOptionalString(ExpressionMap parameters, String key) {
+        StringExpression keyparameter = DataTypes.isStringExpression(parameters, key);
+        return keyparameter == null ? null : keyparameter.evaluate(DataRecord.EMPTY);
     }
 }
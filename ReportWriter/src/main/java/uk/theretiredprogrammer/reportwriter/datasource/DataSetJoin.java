@@ -0,0 +1,219 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+
+// an equi-join of the rows of a left dataset (offered in order) with a right
+// dataset. The hash table is built on whichever side is smaller; in both cases
+// the joined rows are output in left row order, then right row order.
+// Right columns used as keys are dropped, and right columns whose names clash
+// with a left column are renamed as <right dataset name>.<column name>.
+public class DataSetJoin {
+
+    public enum Type {
+        INNER, LEFT
+    }
+
+    public static Type getType(String type) {
+        return switch (type) {
+            case "inner" ->
+                Type.INNER;
+            case "left" ->
+                Type.LEFT;
+            default ->
+                throw new RPTWTRRuntimeException("join: illegal join type - " + type);
+        };
+    }
+
+    private final StoredDataSet left;
+    private final StoredDataSet right;
+    private final Type type;
+    private final int[] leftkeys;
+    private final int[] rightkeys;
+    private final int[] rightcolumns;
+    private final ColumnIndex columnindex;
+    private final boolean buildonleft;
+    // the hash table: key -> {first, last} entry, with entries chained through next
+    private final Map<Object, int[]> table = new HashMap<>();
+    private int[] next;
+    private int[] leftrows = new int[64];
+    private int leftrowcount = 0;
+
+    public DataSetJoin(StoredDataSet left, String rightname, StoredDataSet right, ExpressionList on, ExpressionList to, Type type) {
+        this.left = left;
+        this.right = right;
+        this.type = type;
+        leftkeys = getColumns(left.getColumnIndex(), on, "on");
+        rightkeys = getColumns(right.getColumnIndex(), to == null ? on : to, "to");
+        if (leftkeys.length != rightkeys.length) {
+            throw new RPTWTRRuntimeException("join: on and to must name the same number of fields");
+        }
+        List<String> headers = new ArrayList<>(left.getHeaders());
+        List<ColumnType> types = new ArrayList<>(left.getColumnIndex().getTypes());
+        List<Integer> columns = new ArrayList<>();
+        for (int column = 0; column < right.getColumnIndex().size(); column++) {
+            if (!isRightKey(column)) {
+                String header = right.getHeaders().get(column);
+                headers.add(headers.contains(header) ? rightname + "." + header : header);
+                types.add(right.getColumnIndex().getType(column));
+                columns.add(column);
+            }
+        }
+        rightcolumns = columns.stream().mapToInt(Integer::intValue).toArray();
+        columnindex = new ColumnIndex(headers, types);
+        buildonleft = left.size() < right.size();
+        if (!buildonleft) {
+            next = new int[right.size()];
+            for (int row = 0; row < right.size(); row++) {
+                insert(key(right.getDataRecord(row), rightkeys), row);
+            }
+        }
+    }
+
+    private int[] getColumns(ColumnIndex index, ExpressionList fields, String parametername) {
+        return fields.stream()
+                .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
+                .mapToInt(fieldname -> {
+                    int column = index.indexOf(fieldname);
+                    if (column < 0) {
+                        throw new RPTWTRRuntimeException("join: " + parametername + ": missing field - name was " + fieldname);
+                    }
+                    return column;
+                }).toArray();
+    }
+
+    private boolean isRightKey(int column) {
+        for (int key : rightkeys) {
+            if (key == column) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ColumnIndex getColumnIndex() {
+        return columnindex;
+    }
+
+    private Object key(DataRecord datarecord, int[] keycolumns) {
+        if (keycolumns.length == 1) {
+            return datarecord.get(keycolumns[0]);
+        }
+        String[] key = new String[keycolumns.length];
+        for (int k = 0; k < keycolumns.length; k++) {
+            key[k] = datarecord.get(keycolumns[k]);
+        }
+        return Arrays.asList(key);
+    }
+
+    private void insert(Object key, int entry) {
+        next[entry] = -1;
+        int[] chain = table.get(key);
+        if (chain == null) {
+            table.put(key, new int[]{entry, entry});
+        } else {
+            next[chain[1]] = entry;
+            chain[1] = entry;
+        }
+    }
+
+    // left rows must be offered in order, as cursors onto the left dataset
+    public void add(DataRecord leftrecord, Consumer<DataRecord> output) {
+        if (buildonleft) {
+            if (leftrowcount == leftrows.length) {
+                leftrows = Arrays.copyOf(leftrows, leftrowcount * 2);
+            }
+            leftrows[leftrowcount++] = leftrecord.getRow();
+            return;
+        }
+        int[] chain = table.get(key(leftrecord, leftkeys));
+        if (chain == null) {
+            if (type == Type.LEFT) {
+                output.accept(join(leftrecord, null));
+            }
+            return;
+        }
+        for (int row = chain[0]; row >= 0; row = next[row]) {
+            output.accept(join(leftrecord, right.getDataRecord(row)));
+        }
+    }
+
+    public void finish(Consumer<DataRecord> output) {
+        if (!buildonleft) {
+            return;
+        }
+        next = new int[leftrowcount];
+        for (int i = 0; i < leftrowcount; i++) {
+            insert(key(left.getDataRecord(leftrows[i]), leftkeys), i);
+        }
+        // collect the matching right rows of each left row, as chained pairs
+        int[] firstmatch = new int[leftrowcount];
+        int[] lastmatch = new int[leftrowcount];
+        Arrays.fill(firstmatch, -1);
+        int[] matchrow = new int[64];
+        int[] matchnext = new int[64];
+        int matches = 0;
+        for (int row = 0; row < right.size(); row++) {
+            int[] chain = table.get(key(right.getDataRecord(row), rightkeys));
+            if (chain != null) {
+                for (int i = chain[0]; i >= 0; i = next[i]) {
+                    if (matches == matchrow.length) {
+                        matchrow = Arrays.copyOf(matchrow, matches * 2);
+                        matchnext = Arrays.copyOf(matchnext, matches * 2);
+                    }
+                    matchrow[matches] = row;
+                    matchnext[matches] = -1;
+                    if (firstmatch[i] < 0) {
+                        firstmatch[i] = matches;
+                    } else {
+                        matchnext[lastmatch[i]] = matches;
+                    }
+                    lastmatch[i] = matches++;
+                }
+            }
+        }
+        for (int i = 0; i < leftrowcount; i++) {
+            DataRecord leftrecord = left.getDataRecord(leftrows[i]);
+            if (firstmatch[i] < 0 && type == Type.LEFT) {
+                output.accept(join(leftrecord, null));
+            }
+            for (int match = firstmatch[i]; match >= 0; match = matchnext[match]) {
+                output.accept(join(leftrecord, right.getDataRecord(matchrow[match])));
+            }
+        }
+    }
+
+    private DataRecord join(DataRecord leftrecord, DataRecord rightrecord) {
+        String[] values = new String[columnindex.size()];
+        int leftsize = leftrecord.size();
+        for (int column = 0; column < leftsize; column++) {
+            values[column] = leftrecord.get(column);
+        }
+        for (int i = 0; i < rightcolumns.length; i++) {
+            values[leftsize + i] = rightrecord == null ? "" : rightrecord.get(rightcolumns[i]);
+        }
+        return new DataRecord(columnindex, values);
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+
+// a stable sort of datarecords on a list of fields. The sort keys are extracted
+// once per row; rows are sorted in memory up to the configured sort limit, beyond
+// which sorted runs are spilled to temporary files and merged.
+// With a limit, only that number of rows are kept, in a bounded heap whose root
+// is the row which would be output last; descending gives the highest rows.
+public class DataSetSorter {
+
+    private static final int MAXRUNS = 64;
+    private static final int INITIALHEAPSIZE = 1024;
+
+    private final ColumnIndex columnindex;
+    private final int[] sortcolumns;
+    private final int sortlimit;
+    private StoredDataSet buffer;
+    private final List<File> runs = new ArrayList<>();
+    private final int limit;
+    private final boolean descending;
+    private SortKey[] heapkeys;
+    private DataRecord[] heaprecords;
+    private long[] heapsequence;
+    private int[] heap;
+    private int heapsize;
+    private int freeslot;
+    private long sequence;
+
+    public DataSetSorter(ColumnIndex columnindex, ExpressionList sortfields) {
+        this(columnindex, sortfields, 0, false);
+    }
+
+    // a limit of 0 keeps all rows
+    public DataSetSorter(ColumnIndex columnindex, ExpressionList sortfields, int limit, boolean descending) {
+        this.columnindex = columnindex;
+        this.sortcolumns = sortfields.stream()
+                .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
+                .mapToInt(fieldname -> {
+                    int column = columnindex.indexOf(fieldname);
+                    if (column < 0) {
+                        throw new RPTWTRRuntimeException("sort_by: missing field - name was " + fieldname);
+                    }
+                    return column;
+                }).toArray();
+        this.sortlimit = Configuration.getDefault().getArgConfiguration().getSortLimit();
+        this.limit = limit;
+        this.descending = descending;
+        if (limit > 0) {
+            int size = Math.min(limit + 1, INITIALHEAPSIZE);
+            heapkeys = createSortKeys(size);
+            heaprecords = new DataRecord[size];
+            heapsequence = new long[size];
+            heap = new int[size];
+        } else {
+            buffer = new StoredDataSet(columnindex);
+        }
+    }
+
+    public void add(DataRecord datarecord) {
+        if (limit > 0) {
+            addToHeap(datarecord);
+            return;
+        }
+        buffer.insertDataRecord(datarecord);
+        if (buffer.size() >= sortlimit) {
+            spill();
+        }
+    }
+
+    public StoredDataSet sort() {
+        if (limit > 0) {
+            return sortHeap();
+        }
+        try {
+            if (runs.isEmpty()) {
+                StoredDataSet sorted = new StoredDataSet(columnindex);
+                for (int row : sortedRows()) {
+                    sorted.insertDataRecord(buffer.getDataRecord(row));
+                }
+                buffer = null;
+                return sorted;
+            }
+            if (!buffer.isEmpty()) {
+                spill();
+            }
+            buffer = null;
+            return merge();
+        } finally {
+            runs.forEach(run -> run.delete());
+            runs.clear();
+        }
+    }
+
+    // the row is put in the free slot; it is kept if the heap is not full, or
+    // if it precedes the root, in which case the root's slot becomes free
+    private void addToHeap(DataRecord datarecord) {
+        int slot = freeslot;
+        for (int k = 0; k < sortcolumns.length; k++) {
+            heapkeys[k].set(slot, datarecord, sortcolumns[k]);
+        }
+        heapsequence[slot] = sequence++;
+        if (heapsize < limit) {
+            heaprecords[slot] = datarecord;
+            heap[heapsize] = slot;
+            siftUp(heapsize++);
+            freeslot = heapsize;
+            if (freeslot == heaprecords.length) {
+                growHeap(Math.min(limit + 1, heaprecords.length * 2));
+            }
+        } else if (precedes(slot, heap[0])) {
+            freeslot = heap[0];
+            heaprecords[freeslot] = null;
+            heaprecords[slot] = datarecord;
+            heap[0] = slot;
+            siftDown(0);
+        }
+    }
+
+    private void growHeap(int size) {
+        for (int k = 0; k < heapkeys.length; k++) {
+            heapkeys[k] = heapkeys[k].resize(size);
+        }
+        heaprecords = Arrays.copyOf(heaprecords, size);
+        heapsequence = Arrays.copyOf(heapsequence, size);
+        heap = Arrays.copyOf(heap, size);
+    }
+
+    // true if the row in slot1 is output before the row in slot2; equal rows
+    // are output in the order added
+    private boolean precedes(int slot1, int slot2) {
+        int cmp = compare(heapkeys, slot1, heapkeys, slot2);
+        if (cmp == 0) {
+            return heapsequence[slot1] < heapsequence[slot2];
+        }
+        return descending ? cmp > 0 : cmp < 0;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!precedes(heap[parent], heap[position])) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int last = position;
+            int left = position * 2 + 1;
+            if (left < heapsize && precedes(heap[last], heap[left])) {
+                last = left;
+            }
+            if (left + 1 < heapsize && precedes(heap[last], heap[left + 1])) {
+                last = left + 1;
+            }
+            if (last == position) {
+                return;
+            }
+            swap(position, last);
+            position = last;
+        }
+    }
+
+    private void swap(int position1, int position2) {
+        int slot = heap[position1];
+        heap[position1] = heap[position2];
+        heap[position2] = slot;
+    }
+
+    private StoredDataSet sortHeap() {
+        DataRecord[] sortedrecords = new DataRecord[heapsize];
+        while (heapsize > 0) {
+            sortedrecords[heapsize - 1] = heaprecords[heap[0]];
+            heap[0] = heap[--heapsize];
+            siftDown(0);
+        }
+        heaprecords = null;
+        StoredDataSet sorted = new StoredDataSet(columnindex);
+        for (DataRecord datarecord : sortedrecords) {
+            sorted.insertDataRecord(datarecord);
+        }
+        return sorted;
+    }
+
+    private int[] sortedRows() {
+        int size = buffer.size();
+        SortKey[] keys = createSortKeys(size);
+        for (int row = 0; row < size; row++) {
+            DataRecord datarecord = buffer.getDataRecord(row);
+            for (int k = 0; k < sortcolumns.length; k++) {
+                keys[k].set(row, datarecord, sortcolumns[k]);
+            }
+        }
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        mergesort(rows, new int[size], 0, size, keys);
+        return rows;
+    }
+
+    private SortKey[] createSortKeys(int size) {
+        SortKey[] keys = new SortKey[sortcolumns.length];
+        for (int k = 0; k < sortcolumns.length; k++) {
+            keys[k] = switch (columnindex.getType(sortcolumns[k]).getKind()) {
+                case STRING ->
+                    new StringSortKey(size);
+                case DECIMAL ->
+                    new DoubleSortKey(size);
+                case INTEGER, DATE ->
+                    new LongSortKey(size);
+            };
+        }
+        return keys;
+    }
+
+    private void mergesort(int[] rows, int[] work, int from, int to, SortKey[] keys) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergesort(rows, work, from, middle, keys);
+        mergesort(rows, work, middle, to, keys);
+        if (compare(keys, rows[middle - 1], keys, rows[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(rows, from, work, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(keys, work[left], keys, work[right]) <= 0)) {
+                rows[i] = work[left++];
+            } else {
+                rows[i] = work[right++];
+            }
+        }
+    }
+
+    private static int compare(SortKey[] keys1, int row1, SortKey[] keys2, int row2) {
+        for (int k = 0; k < keys1.length; k++) {
+            int cmp = keys1[k].compare(row1, keys2[k], row2);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private void spill() {
+        try {
+            File run = createRun();
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536))) {
+                out.writeInt(buffer.size());
+                for (int row : sortedRows()) {
+                    DataRecord datarecord = buffer.getDataRecord(row);
+                    for (int column = 0; column < datarecord.size(); column++) {
+                        writeString(out, datarecord.get(column));
+                    }
+                }
+            }
+            buffer = new StoredDataSet(columnindex);
+            if (runs.size() >= MAXRUNS) {
+                // limit the number of runs open at once when merging; the merged
+                // run precedes any later runs, so the sort remains stable
+                List<File> merging = new ArrayList<>(runs);
+                runs.clear();
+                File merged = createRun();
+                try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 65536))) {
+                    out.writeInt(merge(merging, null));
+                    merge(merging, values -> {
+                        for (String value : values) {
+                            writeString(out, value);
+                        }
+                    });
+                } finally {
+                    merging.forEach(mergedrun -> mergedrun.delete());
+                }
+            }
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+    }
+
+    private File createRun() throws IOException {
+        File run = File.createTempFile("reportwriter-sort", ".run");
+        run.deleteOnExit();
+        runs.add(run);
+        return run;
+    }
+
+    private StoredDataSet merge() {
+        StoredDataSet sorted = new StoredDataSet(columnindex);
+        try {
+            merge(runs, values -> sorted.insertDataRecord(new DataRecord(columnindex, values)));
+            return sorted;
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+    }
+
+    private interface MergedRow {
+
+        void accept(String[] values) throws IOException;
+    }
+
+    // returns the number of rows in the runs, only counting them if there is no output
+    private int merge(List<File> inputs, MergedRow output) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((r1, r2) -> {
+            int cmp = compare(r1.keys, 0, r2.keys, 0);
+            return cmp != 0 ? cmp : Integer.compare(r1.runnumber, r2.runnumber);
+        });
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            int count = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                RunReader reader = new RunReader(inputs.get(i), i);
+                readers.add(reader);
+                count += reader.remaining;
+                if (output != null && reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                output.accept(reader.values);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            return count;
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private class RunReader {
+
+        private final DataInputStream in;
+        private final int runnumber;
+        private int remaining;
+        private String[] values;
+        private final SortKey[] keys = createSortKeys(1);
+
+        RunReader(File run, int runnumber) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 65536));
+            this.runnumber = runnumber;
+            this.remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            values = new String[columnindex.size()];
+            for (int column = 0; column < values.length; column++) {
+                values[column] = readString(in);
+            }
+            DataRecord datarecord = new DataRecord(columnindex, values);
+            for (int k = 0; k < sortcolumns.length; k++) {
+                keys[k].set(0, datarecord, sortcolumns[k]);
+            }
+            return true;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    // sort keys are held in primitive arrays for typed columns; missing values sort first
+    private static abstract class SortKey {
+
+        abstract void set(int row, DataRecord datarecord, int column);
+
+        abstract int compare(int row, SortKey other, int otherrow);
+
+        abstract SortKey resize(int size);
+    }
+
+    private static class StringSortKey extends SortKey {
+
+        private final String[] keys;
+
+        StringSortKey(int size) {
+            keys = new String[size];
+        }
+
+        private StringSortKey(String[] keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        SortKey resize(int size) {
+            return new StringSortKey(Arrays.copyOf(keys, size));
+        }
+
+        @Override
+        void set(int row, DataRecord datarecord, int column) {
+            keys[row] = datarecord.get(column);
+        }
+
+        @Override
+        int compare(int row, SortKey other, int otherrow) {
+            return keys[row].compareTo(((StringSortKey) other).keys[otherrow]);
+        }
+    }
+
+    private static class LongSortKey extends SortKey {
+
+        private final long[] keys;
+
+        LongSortKey(int size) {
+            keys = new long[size];
+        }
+
+        private LongSortKey(long[] keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        SortKey resize(int size) {
+            return new LongSortKey(Arrays.copyOf(keys, size));
+        }
+
+        @Override
+        void set(int row, DataRecord datarecord, int column) {
+            keys[row] = datarecord.getLong(column);
+        }
+
+        @Override
+        int compare(int row, SortKey other, int otherrow) {
+            return Long.compare(keys[row], ((LongSortKey) other).keys[otherrow]);
+        }
+    }
+
+    private static class DoubleSortKey extends SortKey {
+
+        private final double[] keys;
+
+        DoubleSortKey(int size) {
+            keys = new double[size];
+        }
+
+        private DoubleSortKey(double[] keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        SortKey resize(int size) {
+            return new DoubleSortKey(Arrays.copyOf(keys, size));
+        }
+
+        @Override
+        void set(int row, DataRecord datarecord, int column) {
+            keys[row] = datarecord.getDouble(column);
+        }
+
+        @Override
+        int compare(int row, SortKey other, int otherrow) {
+            double key1 = keys[row];
+            double key2 = ((DoubleSortKey) other).keys[otherrow];
+            if (Double.isNaN(key1) || Double.isNaN(key2)) {
+                return Boolean.compare(!Double.isNaN(key1), !Double.isNaN(key2));
+            }
+            return Double.compare(key1, key2);
+        }
+    }
+}
@@ -17,18 +17,18 @@ package uk.theretiredprogrammer.reportwriter.datasource;
 
 import java.util.List;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 
 public class DataSetStream extends DataSet {
 
     private Stream<DataRecord> stream;
 
     DataSetStream(StoredDataSet dataset) {
-        super(dataset.getHeaders());
+        super(dataset.getColumnIndex());
         this.stream = dataset.getStream();
     }
 
@@ -37,21 +37,26 @@ public class DataSetStream extends DataSet {
         this.stream = stream;
     }
 
+    DataSetStream(ColumnIndex columnindex, Stream<DataRecord> stream) {
+        super(columnindex);
+        this.stream = stream;
+    }
+
     DataSetStream(List<String> headers) {
         super(headers);
         this.stream = Stream.empty();
     }
 
     public StoredDataSet createStoredDataSet() {
-        return new StoredDataSet(getHeaders()).insertDataRecords(stream);
+        return new StoredDataSet(getColumnIndex()).insertDataRecords(stream);
     }
 
     public DataSetStream createDataSetStream(Stream<DataRecord> stream) {
-        return new DataSetStream(getHeaders(), stream);
+        return new DataSetStream(getColumnIndex(), stream);
     }
     
     public DataSetStream createDataSetStreamIncludeHeader(Stream<DataRecord> stream) {
-        return new DataSetStream(getHeaders(), Stream.concat(getHeaderAsDataRecord(), stream));
+        return new DataSetStream(getColumnIndex(), Stream.concat(getHeaderAsDataRecord(), stream));
     }
 
     Stream<DataRecord> getStream() {
@@ -68,12 +73,9 @@ public class DataSetStream extends DataSet {
 
     public Stream<DataRecord> sort(ExpressionList sortfields) {
         try {
-            List<String> sortfieldnames = sortfields.stream()
-                    .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
-                    .collect(Collectors.toList());
-            return this.stream.sorted((dr1, dr2) -> sortfieldnames.stream()
-                    .map(fn -> dr1.get(fn).compareTo(dr2.get(fn)))
-                    .filter(cmp -> cmp != 0).findFirst().orElse(0));
+            DataSetSorter sorter = new DataSetSorter(getColumnIndex(), sortfields);
+            this.stream.forEachOrdered(dr -> sorter.add(dr));
+            return sorter.sort().getStream();
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
@@ -81,11 +83,17 @@ public class DataSetStream extends DataSet {
 
     public Stream<DataRecord> buildNewDataRecordStream(ExpressionList fields) {
         try {
-            return this.stream.map(datarecord -> new DataRecord(
-                    this.getHeaders(),
-                    fields.stream().map(operand -> DataTypes.isStringExpression(operand).evaluate(datarecord))
-            )
-            );
+            ColumnIndex columnindex = getColumnIndex();
+            StringExpression[] fieldexpressions = fields.stream()
+                    .map(operand -> DataTypes.isStringExpression(operand))
+                    .toArray(StringExpression[]::new);
+            return this.stream.map(datarecord -> {
+                String[] values = new String[fieldexpressions.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = fieldexpressions[i].evaluate(datarecord);
+                }
+                return new DataRecord(columnindex, values);
+            });
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
@@ -100,6 +108,6 @@ public class DataSetStream extends DataSet {
     }
 
     private Stream<DataRecord> getHeaderAsDataRecord() {
-        return Stream.of(new DataRecord(getHeaders(), getHeaders()));
+        return Stream.of(new DataRecord(getColumnIndex(), getHeaders().toArray(new String[0])));
     }
 }
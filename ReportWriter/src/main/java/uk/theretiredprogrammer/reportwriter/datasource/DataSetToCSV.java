@@ -16,34 +16,51 @@
 package uk.theretiredprogrammer.reportwriter.datasource;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.io.Writer;
-import java.util.stream.Collectors;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 
 public class DataSetToCSV {
 
-    public static void save(String path, DataSetStream lines)  {
-        new DataSetToCSV().store(path, lines);
+    public static void save(String path, DataSetStream lines) {
+        DataSetToCSV csv = new DataSetToCSV(path);
+        try {
+            lines.getStream().forEachOrdered(record -> csv.write(record));
+        } finally {
+            csv.close();
+        }
     }
 
+    private final CSVWriter writer;
+
+    // a path ending .gz is written gzip compressed
     @SuppressWarnings("UseSpecificCatch")
-    private void store(String path, DataSetStream lines) {
+    public DataSetToCSV(String path) {
         try {
             File f = new File(path);
             f = f.isAbsolute() ? f : new File(Configuration.getDefault().getOutputDir(), path);
-            try ( Writer wtr = new FileWriter(f);  PrintWriter pwtr = new PrintWriter(wtr)) {
-                lines.getStream().forEachOrdered(record -> {
-                    pwtr.println(
-                            record.getAll().stream()
-                                    .map(value -> value.replace("\"", "\"\""))
-                                    .collect(Collectors.joining("\",\"", "\"", "\""))
-                    );
-                });
-            }
+            OutputStream out = new FileOutputStream(f);
+            writer = new CSVWriter(path.endsWith(".gz") ? new GZIPOutputStream(out, 65536) : out);
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
     }
+
+    public void write(DataRecord record) {
+        try {
+            writer.writeRecord(record);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failure when writing CSV file", ex);
+        }
+    }
+
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failure when writing CSV file", ex);
+        }
+    }
 }
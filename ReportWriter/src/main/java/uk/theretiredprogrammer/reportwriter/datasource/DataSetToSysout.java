@@ -15,27 +15,56 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.io.OutputStream;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 
 public class DataSetToSysout {
 
     public static void display(String title, DataSetStream lines) {
-        new DataSetToSysout().sysout(title, lines);
+        display(title, lines, Configuration.getDefault().getOut());
     }
 
-    private void sysout(String title, DataSetStream lines) {
+    public static void display(String title, DataSetStream lines, OutputStream out) {
+        DataSetToSysout sysout = new DataSetToSysout(title, out);
+        lines.forEachOrdered(record -> sysout.write(record));
+        sysout.close();
+    }
+
+    private final CSVWriter writer;
+
+    public DataSetToSysout(String title, OutputStream out) {
+        writer = new CSVWriter(out);
         if (title != null) {
-            System.out.println();
-            System.out.println(title);
-            System.out.println();
+            writeLine("");
+            writeLine(title);
+            writeLine("");
+        }
+    }
+
+    private void writeLine(String line) {
+        try {
+            writer.writeLine(line);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public void write(DataRecord record) {
+        try {
+            writer.writeRecord(record);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // the output stream is flushed, but left open
+    public void close() {
+        writeLine("");
+        try {
+            writer.flush();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
         }
-        lines.forEachOrdered(record -> {
-            System.out.println(
-                    record.getAll().stream()
-                            .map(value -> value.replace("\"", "\"\""))
-                            .collect(Collectors.joining("\",\"", "\"", "\""))
-            );
-        });
-        System.out.println();
     }
 }
@@ -15,12 +15,12 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataSets {
         
-    private Map<String,StoredDataSet> datasets = new HashMap<>();
+    private Map<String,StoredDataSet> datasets = new ConcurrentHashMap<>();
 
     public StoredDataSet getDataSet(String datasetname) {
         return datasets.get(datasetname);
@@ -29,4 +29,8 @@ public class DataSets {
     public void saveDataSet(String datasetname, StoredDataSet dataset) {
         datasets.put(datasetname, dataset);
     }
+
+    public void removeDataSet(String datasetname) {
+        datasets.remove(datasetname);
+    }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// dates held as epoch days
+public class DateColumn extends Column {
+
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    private final ColumnType type;
+    private int[] values = new int[64];
+    private final ValueText texts;
+    private final FormatCache formatted = new FormatCache();
+    // for a pattern which writes a four digit year, and a two digit month and day,
+    // at fixed positions between fixed text (eg dd/MM/yyyy), a date as the pattern
+    // writes it - otherwise null
+    private String layout;
+    private int yearat;
+    private int monthat;
+    private int dayat;
+
+    public DateColumn(ColumnType type) {
+        this.type = type;
+        texts = new ValueText();
+        findLayout();
+    }
+
+    DateColumn(ColumnType type, ByteBuffer in, int size) {
+        this.type = type;
+        values = new int[Math.max(64, size)];
+        in.asIntBuffer().get(values, 0, size);
+        in.position(in.position() + size * 4);
+        texts = new ValueText(in, size);
+        this.size = size;
+        findLayout();
+    }
+
+    // from two dates with distinct digits, written with and without leading zeros
+    private void findLayout() {
+        String probe = type.format(LocalDate.of(2345, 11, 22).toEpochDay());
+        String other = type.format(LocalDate.of(1987, 3, 4).toEpochDay());
+        yearat = probe.indexOf("2345");
+        monthat = probe.indexOf("11");
+        dayat = probe.indexOf("22");
+        if (yearat < 0 || monthat < 0 || dayat < 0 || probe.length() != other.length()
+                || !other.startsWith("1987", yearat) || !other.startsWith("03", monthat) || !other.startsWith("04", dayat)) {
+            return;
+        }
+        for (int i = 0; i < probe.length(); i++) {
+            if (!isDigitAt(i) && (probe.charAt(i) != other.charAt(i) || isDigit(probe.charAt(i)))) {
+                return;
+            }
+        }
+        layout = probe;
+    }
+
+    private boolean isDigitAt(int i) {
+        return (i >= yearat && i < yearat + 4) || (i >= monthat && i < monthat + 2) || (i >= dayat && i < dayat + 2);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    @Override
+    public String get(int row) {
+        String text = texts.get(row);
+        if (text != null) {
+            return text;
+        }
+        long value = getLong(row);
+        text = formatted.get(value);
+        return text != null ? text : formatted.put(value, type.format(value));
+    }
+
+    // a value is held as written if the date pattern would format it differently
+    @Override
+    public void add(String value) {
+        long epochday = type.parseLong(value);
+        append(epochday == ColumnType.MISSINGLONG ? MISSING : (int) epochday);
+        texts.add(size - 1, isFormatted(value, epochday) ? null : value);
+    }
+
+    // with a layout, a value is formatted if its text is as the layout's and its
+    // digits are those of the date (which they may not be if the parse adjusted
+    // the date, eg 30/02/2020); other values have to be formatted to compare
+    private boolean isFormatted(String value, long epochday) {
+        if (epochday == ColumnType.MISSINGLONG) {
+            return value.isEmpty();
+        }
+        if (layout == null) {
+            return type.format(epochday).equals(value);
+        }
+        if (value.length() != layout.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isDigitAt(i) ? !isDigit(c) : c != layout.charAt(i)) {
+                return false;
+            }
+        }
+        LocalDate date = LocalDate.ofEpochDay(epochday);
+        return date.getYear() == digits(value, yearat, 4) && date.getMonthValue() == digits(value, monthat, 2)
+                && date.getDayOfMonth() == digits(value, dayat, 2);
+    }
+
+    private static int digits(String value, int start, int length) {
+        int digits = 0;
+        for (int i = start; i < start + length; i++) {
+            digits = digits * 10 + value.charAt(i) - '0';
+        }
+        return digits;
+    }
+
+    @Override
+    public void add(Column from, int row) {
+        if (from instanceof DateColumn datecolumn && datecolumn.type.equals(type)) {
+            append(datecolumn.values[row]);
+            texts.add(datecolumn.texts, row, size - 1);
+        } else {
+            add(from.get(row));
+        }
+    }
+
+    @Override
+    public void addAll(Column from) {
+        if (from instanceof DateColumn datecolumn && datecolumn.type.equals(type)) {
+            if (size + from.size() > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + from.size()));
+            }
+            System.arraycopy(datecolumn.values, 0, values, size, from.size());
+            texts.addAll(datecolumn.texts, size, from.size());
+            size += from.size();
+        } else {
+            super.addAll(from);
+        }
+    }
+
+    private void append(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    long getHeapSize() {
+        return size * 4L + texts.getHeapSize();
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+        for (int row = 0; row < size; row++) {
+            out.writeInt(values[row]);
+        }
+        texts.write(out);
+    }
+
+    @Override
+    public long getLong(int row) {
+        return values[row] == MISSING ? ColumnType.MISSINGLONG : values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row] == MISSING ? Double.NaN : values[row];
+    }
+}
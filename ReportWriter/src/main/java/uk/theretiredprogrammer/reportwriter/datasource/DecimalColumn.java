@@ -0,0 +1,210 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// decimals held as doubles, for comparisons and sums, with the number of decimal
+// places written so that each value is output as it was loaded (eg "2.50");
+// values which cannot be formatted exactly from their double are held as text
+public class DecimalColumn extends Column {
+
+    private static final int MAXDIGITS = 15;
+    private static final double[] POWERSOFTEN = new double[MAXDIGITS + 1];
+
+    static {
+        POWERSOFTEN[0] = 1;
+        for (int scale = 1; scale <= MAXDIGITS; scale++) {
+            POWERSOFTEN[scale] = POWERSOFTEN[scale - 1] * 10;
+        }
+    }
+
+    private double[] values = new double[64];
+    // the number of decimal places, or -1 if the value is held as text
+    private byte[] scales = new byte[64];
+    private final ValueText texts;
+
+    public DecimalColumn() {
+        texts = new ValueText();
+    }
+
+    DecimalColumn(ByteBuffer in, int size) {
+        values = new double[Math.max(64, size)];
+        in.asDoubleBuffer().get(values, 0, size);
+        in.position(in.position() + size * 8);
+        scales = new byte[Math.max(64, size)];
+        in.get(scales, 0, size);
+        texts = new ValueText(in, size);
+        this.size = size;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return ColumnType.DECIMAL;
+    }
+
+    @Override
+    public String get(int row) {
+        int scale = scales[row];
+        if (scale < 0) {
+            return texts.get(row);
+        }
+        double value = values[row];
+        if (Double.isNaN(value)) {
+            return "";
+        }
+        String digits = Long.toString(Math.round(value * POWERSOFTEN[scale]));
+        if (scale == 0) {
+            return digits;
+        }
+        boolean negative = value < 0;
+        int sign = negative ? 1 : 0;
+        StringBuilder formatted = new StringBuilder(digits.length() + 3);
+        if (negative) {
+            formatted.append('-');
+        }
+        for (int zeros = scale + 1 - (digits.length() - sign); zeros > 0; zeros--) {
+            formatted.append('0');
+        }
+        formatted.append(digits, sign, digits.length());
+        formatted.insert(formatted.length() - scale, '.');
+        return formatted.toString();
+    }
+
+    @Override
+    public void add(String value) {
+        int scale = scaleOf(value);
+        append(ColumnType.DECIMAL.parseDouble(value), scale);
+        texts.add(size - 1, scale < 0 ? value : null);
+    }
+
+    // the number of decimal places of a value written as -?(0|[1-9][0-9]*)(.[0-9]+)?
+    // with no more than 15 significant digits, which can be formatted exactly from
+    // its double; -1 for any other value
+    static int scaleOf(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return 0;
+        }
+        int i = value.charAt(0) == '-' ? 1 : 0;
+        int integerstart = i;
+        int digits = 0;
+        while (i < length && isDigit(value.charAt(i))) {
+            if (digits > 0 || value.charAt(i) != '0') {
+                digits++;
+            }
+            i++;
+        }
+        if (i == integerstart || (i - integerstart > 1 && value.charAt(integerstart) == '0')) {
+            return -1;
+        }
+        int scale = 0;
+        if (i < length && value.charAt(i) == '.') {
+            int fractionstart = ++i;
+            while (i < length && isDigit(value.charAt(i))) {
+                if (digits > 0 || value.charAt(i) != '0') {
+                    digits++;
+                }
+                i++;
+            }
+            scale = i - fractionstart;
+            if (scale == 0) {
+                return -1;
+            }
+        }
+        // a negative zero would be formatted without its sign
+        if (i < length || digits > MAXDIGITS || scale > MAXDIGITS || (digits == 0 && integerstart == 1)) {
+            return -1;
+        }
+        return scale;
+    }
+
+    // a value with a known scale as a long of that number of decimal places
+    static long unscaled(double value, int scale) {
+        return Math.round(value * POWERSOFTEN[scale]);
+    }
+
+    @Override
+    int getScale(int row) {
+        return scales[row];
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    @Override
+    public void add(Column from, int row) {
+        if (from instanceof DecimalColumn decimalcolumn) {
+            append(decimalcolumn.values[row], decimalcolumn.scales[row]);
+            texts.add(decimalcolumn.texts, row, size - 1);
+        } else {
+            add(from.get(row));
+        }
+    }
+
+    @Override
+    public void addAll(Column from) {
+        if (from instanceof DecimalColumn decimalcolumn) {
+            if (size + from.size() > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + from.size()));
+                scales = Arrays.copyOf(scales, values.length);
+            }
+            System.arraycopy(decimalcolumn.values, 0, values, size, from.size());
+            System.arraycopy(decimalcolumn.scales, 0, scales, size, from.size());
+            texts.addAll(decimalcolumn.texts, size, from.size());
+            size += from.size();
+        } else {
+            super.addAll(from);
+        }
+    }
+
+    private void append(double value, int scale) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            scales = Arrays.copyOf(scales, size * 2);
+        }
+        scales[size] = (byte) scale;
+        values[size++] = value;
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+        for (int row = 0; row < size; row++) {
+            out.writeDouble(values[row]);
+        }
+        out.write(scales, 0, size);
+        texts.write(out);
+    }
+
+    @Override
+    long getHeapSize() {
+        return size * 9L + texts.getHeapSize();
+    }
+
+    @Override
+    public long getLong(int row) {
+        return Double.isNaN(values[row]) ? ColumnType.MISSINGLONG : (long) values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+}
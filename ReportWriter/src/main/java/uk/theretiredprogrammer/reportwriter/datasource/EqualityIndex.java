@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// the rows of a dictionary encoded string column holding each of its values -
+// used to find the rows which can pass a filter comparing the column with a
+// constant. Built by counting the codes, so it costs much less than a scan.
+class EqualityIndex {
+
+    private static final int[] NOROWS = new int[0];
+
+    private final int size;
+    private final boolean ignorecase;
+    private final Map<String, int[]> rows = new HashMap<>();
+
+    EqualityIndex(StringColumn column, int size, boolean ignorecase) {
+        this.size = size;
+        this.ignorecase = ignorecase;
+        // the values of the dictionary, and so their codes, are grouped by key
+        int[] codegroups = new int[column.getDictionarySize()];
+        Map<String, Integer> groups = new HashMap<>();
+        for (int code = 0; code < codegroups.length; code++) {
+            String value = column.getDictionaryValue(code);
+            codegroups[code] = groups.computeIfAbsent(ignorecase ? foldCase(value) : value, k -> groups.size());
+        }
+        int[] counts = new int[groups.size()];
+        for (int row = 0; row < size; row++) {
+            counts[codegroups[column.getCode(row)]]++;
+        }
+        int[][] grouprows = new int[counts.length][];
+        for (int group = 0; group < counts.length; group++) {
+            grouprows[group] = new int[counts[group]];
+        }
+        groups.forEach((key, group) -> rows.put(key, grouprows[group]));
+        int[] next = new int[counts.length];
+        for (int row = 0; row < size; row++) {
+            int group = codegroups[column.getCode(row)];
+            grouprows[group][next[group]++] = row;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] getRows(String value) {
+        int[] valuerows = rows.get(ignorecase ? foldCase(value) : value);
+        return valuerows == null ? NOROWS : valuerows;
+    }
+
+    // as String.equalsIgnoreCase, which compares each character converted to
+    // upper case and then to lower case
+    private static String foldCase(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
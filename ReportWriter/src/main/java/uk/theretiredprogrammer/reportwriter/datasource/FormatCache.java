@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+// the most recently formatted value of each of a fixed number of slots, so that
+// the repeated values of a typed column are not formatted (and a new String made)
+// on every read. Slots hold immutable entries, so the cache may be shared by
+// threads reading the column.
+class FormatCache {
+
+    private static final int SLOTS = 1024;
+
+    private static class Entry {
+
+        private final long value;
+        private final String formatted;
+
+        Entry(long value, String formatted) {
+            this.value = value;
+            this.formatted = formatted;
+        }
+    }
+
+    private final Entry[] entries = new Entry[SLOTS];
+
+    // null if the value is not cached
+    String get(long value) {
+        Entry entry = entries[slot(value)];
+        return entry != null && entry.value == value ? entry.formatted : null;
+    }
+
+    String put(long value, String formatted) {
+        entries[slot(value)] = new Entry(value, formatted);
+        return formatted;
+    }
+
+    private static int slot(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 54);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class IntegerColumn extends Column {
+
+    private long[] values = new long[64];
+    private final ValueText texts;
+    private final FormatCache formatted = new FormatCache();
+
+    public IntegerColumn() {
+        texts = new ValueText();
+    }
+
+    IntegerColumn(ByteBuffer in, int size) {
+        values = new long[Math.max(64, size)];
+        in.asLongBuffer().get(values, 0, size);
+        in.position(in.position() + size * 8);
+        texts = new ValueText(in, size);
+        this.size = size;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return ColumnType.INTEGER;
+    }
+
+    @Override
+    public String get(int row) {
+        String text = texts.get(row);
+        if (text != null) {
+            return text;
+        }
+        long value = values[row];
+        text = formatted.get(value);
+        return text != null ? text : formatted.put(value, ColumnType.INTEGER.format(value));
+    }
+
+    @Override
+    public void add(String value) {
+        append(ColumnType.INTEGER.parseLong(value));
+        texts.add(size - 1, isFormatted(value) ? null : value);
+    }
+
+    // a value which has parsed is formatted as written, unless it has a sign
+    // other than minus, leading zeros, or surrounding spaces
+    private static boolean isFormatted(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return true;
+        }
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        if (start == length || value.charAt(length - 1) <= ' ') {
+            return false;
+        }
+        char first = value.charAt(start);
+        return (first >= '1' && first <= '9') || (first == '0' && length == 1);
+    }
+
+    @Override
+    public void add(Column from, int row) {
+        if (from instanceof IntegerColumn integercolumn) {
+            append(integercolumn.values[row]);
+            texts.add(integercolumn.texts, row, size - 1);
+        } else {
+            add(from.get(row));
+        }
+    }
+
+    @Override
+    public void addAll(Column from) {
+        if (from instanceof IntegerColumn integercolumn) {
+            if (size + from.size() > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + from.size()));
+            }
+            System.arraycopy(integercolumn.values, 0, values, size, from.size());
+            texts.addAll(integercolumn.texts, size, from.size());
+            size += from.size();
+        } else {
+            super.addAll(from);
+        }
+    }
+
+    private void append(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    long getHeapSize() {
+        return size * 8L + texts.getHeapSize();
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+        for (int row = 0; row < size; row++) {
+            out.writeLong(values[row]);
+        }
+        texts.write(out);
+    }
+
+    // only the value's own formatting of a long can equal a value of the column,
+    // unless values are held as written
+    @Override
+    public BlockSelector equalsSelector(String value, boolean ignorecase) {
+        if (!texts.isEmpty()) {
+            return super.equalsSelector(value, ignorecase);
+        }
+        long match;
+        try {
+            match = ColumnType.INTEGER.parseLong(value);
+        } catch (RuntimeException ex) {
+            return BlockSelector.NONE;
+        }
+        if (!ColumnType.INTEGER.format(match).equals(value)) {
+            return BlockSelector.NONE;
+        }
+        long[] rowvalues = values;
+        return (start, in, out) -> {
+            for (int word = 0; word < in.length; word++) {
+                long selected = in[word];
+                long result = 0;
+                while (selected != 0) {
+                    int bit = Long.numberOfTrailingZeros(selected);
+                    if (rowvalues[start + word * 64 + bit] == match) {
+                        result |= 1L << bit;
+                    }
+                    selected &= selected - 1;
+                }
+                out[word] = result;
+            }
+        };
+    }
+
+    @Override
+    public long getLong(int row) {
+        return values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row] == ColumnType.MISSINGLONG ? Double.NaN : values[row];
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+
+// a growable store of bytes outside the heap - a temporary file, memory mapped in
+// fixed size chunks as it grows. Reads are by absolute position, so a store may be
+// read by several threads once written. The file is deleted as soon as it is
+// opened (or, where an open file cannot be deleted, when it is closed), so none is
+// left however the process ends; its space is released once the store, and so its
+// channel and mappings, are no longer reachable.
+class MappedStore {
+
+    private static final int CHUNKBITS = 26;
+    private static final int CHUNKSIZE = 1 << CHUNKBITS;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[4];
+    private int chunkcount = 0;
+    private long size = 0;
+
+    MappedStore() {
+        try {
+            Path file = Files.createTempFile("reportwriter-offheap", ".dat");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+            }
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+        FileChannel toclose = channel;
+        CLEANER.register(this, () -> {
+            try {
+                toclose.close();
+            } catch (IOException ex) {
+            }
+        });
+    }
+
+    long size() {
+        return size;
+    }
+
+    void appendLong(long value) {
+        // longs are aligned, so never span chunks
+        ensureCapacity(size + 8);
+        chunks[(int) (size >>> CHUNKBITS)].putLong((int) (size & (CHUNKSIZE - 1)), value);
+        size += 8;
+    }
+
+    long getLong(long position) {
+        return chunks[(int) (position >>> CHUNKBITS)].getLong((int) (position & (CHUNKSIZE - 1)));
+    }
+
+    void append(byte[] bytes) {
+        ensureCapacity(size + bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            int chunkoffset = (int) (size & (CHUNKSIZE - 1));
+            int length = Math.min(bytes.length - offset, CHUNKSIZE - chunkoffset);
+            chunks[(int) (size >>> CHUNKBITS)].put(chunkoffset, bytes, offset, length);
+            offset += length;
+            size += length;
+        }
+    }
+
+    void get(long position, byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int chunkoffset = (int) (position & (CHUNKSIZE - 1));
+            int length = Math.min(bytes.length - offset, CHUNKSIZE - chunkoffset);
+            chunks[(int) (position >>> CHUNKBITS)].get(chunkoffset, bytes, offset, length);
+            offset += length;
+            position += length;
+        }
+    }
+
+    byte get(long position) {
+        return chunks[(int) (position >>> CHUNKBITS)].get((int) (position & (CHUNKSIZE - 1)));
+    }
+
+    private void ensureCapacity(long capacity) {
+        try {
+            while ((long) chunkcount << CHUNKBITS < capacity) {
+                if (chunkcount == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunkcount * 2);
+                }
+                chunks[chunkcount] = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkcount << CHUNKBITS, CHUNKSIZE);
+                chunkcount++;
+            }
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        }
+    }
+}
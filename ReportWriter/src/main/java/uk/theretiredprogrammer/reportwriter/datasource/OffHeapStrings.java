@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.nio.charset.StandardCharsets;
+
+// strings held outside the heap: the UTF-8 bytes of each value are appended to an
+// arena, and the value found by its offset and length - held as the end offset of
+// each row (the row's offset being the end of the previous row), inverted for null.
+class OffHeapStrings {
+
+    private final MappedStore arena = new MappedStore();
+    private final MappedStore ends = new MappedStore();
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    void add(String value) {
+        if (value == null) {
+            ends.appendLong(~arena.size());
+        } else {
+            arena.append(value.getBytes(StandardCharsets.UTF_8));
+            ends.appendLong(arena.size());
+        }
+        size++;
+    }
+
+    String get(int row) {
+        long end = ends.getLong(row * 8L);
+        if (end < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) (end - start(row))];
+        arena.get(start(row), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // compares the stored bytes, without creating the string
+    boolean equals(int row, byte[] value) {
+        long end = ends.getLong(row * 8L);
+        long start = start(row);
+        if (end < 0 || end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (arena.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long start(int row) {
+        if (row == 0) {
+            return 0;
+        }
+        long previousend = ends.getLong((row - 1) * 8L);
+        return previousend < 0 ? ~previousend : previousend;
+    }
+}
@@ -15,23 +15,61 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
 
 public class StoredDataSet extends DataSet {
 
-    private final List<DataRecord> dataset = new ArrayList<>();
+    private static final int HEAPCHECKINTERVAL = 65536;
+
+    private final Column[] columns;
+    private int rowcount = 0;
+    private boolean offheap = false;
+    // keyed by column (-1 - column for the case insensitive indexes)
+    private final Map<Integer, EqualityIndex> indexes = new ConcurrentHashMap<>();
 
     public StoredDataSet(List<String> headers) {
         super(headers);
+        columns = createColumns();
     }
 
     public StoredDataSet(Stream<String> headers) {
         super(headers);
+        columns = createColumns();
+    }
+
+    public StoredDataSet(ColumnIndex columnindex) {
+        super(columnindex);
+        columns = createColumns();
+    }
+
+    StoredDataSet(ColumnIndex columnindex, Column[] columns, int rowcount) {
+        super(columnindex);
+        this.columns = columns;
+        this.rowcount = rowcount;
+        offheap = Arrays.stream(columns).anyMatch(Column::isOffHeap);
+        checkHeapSize();
+    }
+
+    public Column getColumn(int column) {
+        return columns[column];
+    }
+
+    private Column[] createColumns() {
+        Column[] newcolumns = new Column[getColumnIndex().size()];
+        for (int i = 0; i < newcolumns.length; i++) {
+            newcolumns[i] = getColumnIndex().getType(i).createColumn();
+        }
+        return newcolumns;
     }
 
     public DataSetStream createDataRecordStream() {
@@ -43,30 +81,112 @@ public class StoredDataSet extends DataSet {
     }
 
     public Stream<DataRecord> getStream() {
-        return dataset.stream();
+        return IntStream.range(0, rowcount).mapToObj(this::getDataRecord);
+    }
+
+    public DataRecord getDataRecord(int row) {
+        return new DataRecord(getColumnIndex(), columns, row);
+    }
+
+    public int size() {
+        return rowcount;
+    }
+
+    // the rows (in order) whose value in the column equals the value, found from
+    // an index of the column built on first use; the array must not be modified.
+    // Returns null if the column cannot be indexed (it is not dictionary encoded).
+    public int[] getMatchingRows(int column, String value, boolean ignorecase) {
+        if (!(columns[column] instanceof StringColumn stringcolumn && stringcolumn.isDictionaryEncoded())) {
+            return null;
+        }
+        return indexes.compute(ignorecase ? -1 - column : column,
+                (key, index) -> index != null && index.size() == rowcount ? index : new EqualityIndex(stringcolumn, rowcount, ignorecase))
+                .getRows(value);
     }
 
     public void insertDataRecord(Stream<String> fields) {
-        dataset.add(new DataRecord(getHeaders(), fields));
+        insertDataRecord(fields.toList());
     }
 
     public void insertDataRecord(List<String> fields) {
-        dataset.add(new DataRecord(getHeaders(), fields));
+        DataRecord.checkFieldCount(columns.length, fields.size());
+        for (int i = 0; i < columns.length; i++) {
+            try {
+                columns[i].add(fields.get(i));
+            } catch (RPTWTRRuntimeException ex) {
+                throw new RPTWTRRuntimeException("Data Record: bad value in column " + getHeaders().get(i) + " (row " + (rowcount + 1) + ") - " + ex.getMessage());
+            }
+        }
+        if (++rowcount % HEAPCHECKINTERVAL == 0) {
+            checkHeapSize();
+        }
+    }
+
+    public void insertDataRecord(DataRecord datarecord) {
+        DataRecord.checkFieldCount(columns.length, datarecord.size());
+        for (int i = 0; i < columns.length; i++) {
+            Column from = datarecord.getColumn(i);
+            if (from == null) {
+                columns[i].add(datarecord.get(i));
+            } else {
+                columns[i].add(from, datarecord.getRow());
+            }
+        }
+        if (++rowcount % HEAPCHECKINTERVAL == 0) {
+            checkHeapSize();
+        }
+    }
+
+    // from must have the same column index
+    void insertDataSet(StoredDataSet from) {
+        if (from.offheap && !offheap) {
+            moveOffHeap();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].addAll(from.columns[i]);
+        }
+        rowcount += from.rowcount;
+        checkHeapSize();
+    }
+
+    public boolean isOffHeap() {
+        return offheap;
+    }
+
+    // once the estimated heap size of the columns passes the configured threshold,
+    // the dataset is moved off heap (see StringColumn)
+    private void checkHeapSize() {
+        if (!offheap) {
+            long heapsize = 0;
+            for (Column column : columns) {
+                heapsize += column.getHeapSize();
+            }
+            if (heapsize > Configuration.getDefault().getArgConfiguration().getOffHeapThreshold()) {
+                moveOffHeap();
+            }
+        }
+    }
+
+    private void moveOffHeap() {
+        offheap = true;
+        for (Column column : columns) {
+            column.moveOffHeap();
+        }
     }
 
     public StoredDataSet insertDataRecords(Stream<DataRecord> datarecords) {
-        datarecords.forEach(dr -> dataset.add(dr));
+        datarecords.forEachOrdered(dr -> insertDataRecord(dr));
         return this;
     }
 
     public List<String> evaluateheaders(ExpressionList headerexpressions) {
-        DataRecord datarecord = dataset.get(0);
+        DataRecord datarecord = getDataRecord(0);
         return headerexpressions.stream()
                 .map(operand -> DataTypes.isStringExpression(operand).evaluate(datarecord))
                 .collect(Collectors.toList());
     }
     
     public boolean isEmpty() {
-        return dataset.isEmpty();
+        return rowcount == 0;
     }
 }
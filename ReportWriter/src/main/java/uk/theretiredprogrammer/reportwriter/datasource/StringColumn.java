@@ -0,0 +1,290 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// a string column, held dictionary encoded until the number of distinct values
+// becomes too large to be worthwhile, after which the values are held directly -
+// on the heap, or once the column has been moved off heap, in an OffHeapStrings
+public class StringColumn extends Column {
+
+    private static final int MAXDICTIONARYSIZE = 65536;
+    private static final int INITIALCAPACITY = 64;
+
+    private int[] codes = new int[INITIALCAPACITY];
+    private List<String> dictionary = new ArrayList<>();
+    private Map<String, Integer> lookup = new HashMap<>();
+    private String[] values = null;
+    private long valuesheapsize = 0;
+    private boolean offheap = false;
+    private OffHeapStrings offheapvalues = null;
+
+    public StringColumn() {
+    }
+
+    StringColumn(ByteBuffer in, int size) {
+        if (in.get() == 0) {
+            int dictionarysize = in.getInt();
+            for (int code = 0; code < dictionarysize; code++) {
+                String value = DataSetCache.readString(in);
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            codes = new int[Math.max(INITIALCAPACITY, size)];
+            in.asIntBuffer().get(codes, 0, size);
+            in.position(in.position() + size * 4);
+        } else {
+            codes = null;
+            dictionary = null;
+            lookup = null;
+            values = new String[Math.max(INITIALCAPACITY, size)];
+            for (int row = 0; row < size; row++) {
+                values[row] = DataSetCache.readString(in);
+                valuesheapsize += heapSize(values[row]);
+            }
+        }
+        this.size = size;
+    }
+
+    @Override
+    public String get(int row) {
+        return codes != null ? dictionary.get(codes[row]) : values != null ? values[row] : offheapvalues.get(row);
+    }
+
+    @Override
+    public void add(String value) {
+        if (codes != null) {
+            Integer code = lookup.get(value);
+            if (code == null) {
+                if (dictionary.size() < MAXDICTIONARYSIZE) {
+                    code = dictionary.size();
+                    dictionary.add(value);
+                    lookup.put(value, code);
+                } else {
+                    decode();
+                    add(value);
+                    return;
+                }
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            codes[size++] = code;
+        } else if (values != null) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            valuesheapsize += heapSize(value);
+        } else {
+            offheapvalues.add(value);
+            size++;
+        }
+    }
+
+    // the dictionary of an encoded column is merged by recoding its values, unless
+    // the merged dictionary could become too large
+    @Override
+    public void addAll(Column from) {
+        if (codes != null && from instanceof StringColumn stringcolumn && stringcolumn.codes != null
+                && dictionary.size() + stringcolumn.dictionary.size() <= MAXDICTIONARYSIZE) {
+            int[] recode = new int[stringcolumn.dictionary.size()];
+            for (int fromcode = 0; fromcode < recode.length; fromcode++) {
+                String value = stringcolumn.dictionary.get(fromcode);
+                Integer code = lookup.get(value);
+                if (code == null) {
+                    code = dictionary.size();
+                    dictionary.add(value);
+                    lookup.put(value, code);
+                }
+                recode[fromcode] = code;
+            }
+            if (size + from.size() > codes.length) {
+                codes = Arrays.copyOf(codes, Math.max(size * 2, size + from.size()));
+            }
+            for (int row = 0; row < from.size(); row++) {
+                codes[size++] = recode[stringcolumn.codes[row]];
+            }
+        } else if (from instanceof StringColumn stringcolumn && stringcolumn.values != null && !offheap) {
+            if (codes != null) {
+                decode();
+            }
+            if (size + from.size() > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + from.size()));
+            }
+            System.arraycopy(stringcolumn.values, 0, values, size, from.size());
+            size += from.size();
+            valuesheapsize += stringcolumn.valuesheapsize;
+        } else {
+            super.addAll(from);
+        }
+    }
+
+    @Override
+    void write(DataOutputStream out) throws IOException {
+        if (codes != null) {
+            out.writeByte(0);
+            out.writeInt(dictionary.size());
+            for (String value : dictionary) {
+                DataSetSorter.writeString(out, value);
+            }
+            for (int row = 0; row < size; row++) {
+                out.writeInt(codes[row]);
+            }
+        } else {
+            out.writeByte(1);
+            for (int row = 0; row < size; row++) {
+                DataSetSorter.writeString(out, get(row));
+            }
+        }
+    }
+
+    // for an encoded column, the codes of the matching values are found once,
+    // and the rows selected by their codes
+    @Override
+    public BlockSelector equalsSelector(String value, boolean ignorecase) {
+        if (values != null) {
+            String[] rowvalues = values;
+            return (start, in, out) -> BlockSelector.select(start, in, out,
+                    row -> ignorecase ? rowvalues[row].equalsIgnoreCase(value) : rowvalues[row].equals(value));
+        }
+        if (offheapvalues != null) {
+            if (ignorecase) {
+                return super.equalsSelector(value, ignorecase);
+            }
+            OffHeapStrings rowvalues = offheapvalues;
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            return (start, in, out) -> BlockSelector.select(start, in, out, row -> rowvalues.equals(row, bytes));
+        }
+        boolean[] matching = new boolean[dictionary.size()];
+        if (ignorecase) {
+            for (int code = 0; code < matching.length; code++) {
+                matching[code] = dictionary.get(code).equalsIgnoreCase(value);
+            }
+        } else {
+            Integer code = lookup.get(value);
+            if (code == null) {
+                return BlockSelector.NONE;
+            }
+            matching[code] = true;
+        }
+        return codeSelector(matching);
+    }
+
+    // a dictionary encoded column tests each distinct value once
+    @Override
+    public BlockSelector matchSelector(Predicate<String> test) {
+        if (codes == null) {
+            return super.matchSelector(test);
+        }
+        boolean[] matching = new boolean[dictionary.size()];
+        for (int code = 0; code < matching.length; code++) {
+            matching[code] = test.test(dictionary.get(code));
+        }
+        return codeSelector(matching);
+    }
+
+    private BlockSelector codeSelector(boolean[] matching) {
+        int[] rowcodes = codes;
+        return (start, in, out) -> {
+            for (int word = 0; word < in.length; word++) {
+                long selected = in[word];
+                long result = 0;
+                while (selected != 0) {
+                    int bit = Long.numberOfTrailingZeros(selected);
+                    if (matching[rowcodes[start + word * 64 + bit]]) {
+                        result |= 1L << bit;
+                    }
+                    selected &= selected - 1;
+                }
+                out[word] = result;
+            }
+        };
+    }
+
+    public boolean isDictionaryEncoded() {
+        return codes != null;
+    }
+
+    // values held on the heap are estimated as a string object and its bytes
+    @Override
+    long getHeapSize() {
+        return codes != null ? size * 4L : valuesheapsize;
+    }
+
+    private static long heapSize(String value) {
+        return value == null ? 8 : 48 + value.length();
+    }
+
+    // the values are moved now if the column has been decoded, otherwise when it is
+    @Override
+    void moveOffHeap() {
+        offheap = true;
+        if (values != null) {
+            offheapvalues = new OffHeapStrings();
+            for (int row = 0; row < size; row++) {
+                offheapvalues.add(values[row]);
+            }
+            values = null;
+            valuesheapsize = 0;
+        }
+    }
+
+    @Override
+    boolean isOffHeap() {
+        return offheap;
+    }
+
+    int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    String getDictionaryValue(int code) {
+        return dictionary.get(code);
+    }
+
+    int getCode(int row) {
+        return codes[row];
+    }
+
+    private void decode() {
+        if (offheap) {
+            offheapvalues = new OffHeapStrings();
+            for (int i = 0; i < size; i++) {
+                offheapvalues.add(dictionary.get(codes[i]));
+            }
+        } else {
+            values = new String[Math.max(INITIALCAPACITY, codes.length)];
+            for (int i = 0; i < size; i++) {
+                values[i] = dictionary.get(codes[i]);
+                valuesheapsize += heapSize(values[i]);
+            }
+        }
+        codes = null;
+        dictionary = null;
+        lookup = null;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+// the text of the values of a typed column which its type would not format as
+// they were written (eg "+5" for an integer) - so that declaring a type changes
+// how a column's values compare, but not the values output. The rows held as text
+// are marked, and their text held in a (dictionary encoded) string column of all
+// the rows, which is only created once a row needs it.
+class ValueText {
+
+    private final BitSet marked = new BitSet();
+    // "" for the rows which are not marked
+    private StringColumn texts = null;
+
+    ValueText() {
+    }
+
+    ValueText(ByteBuffer in, int size) {
+        if (in.get() != 0) {
+            long[] words = new long[in.getInt()];
+            in.asLongBuffer().get(words);
+            in.position(in.position() + words.length * 8);
+            marked.or(BitSet.valueOf(words));
+            texts = new StringColumn(in, size);
+        }
+    }
+
+    // null if the row's value is formatted by the column's type
+    String get(int row) {
+        return texts != null && marked.get(row) ? texts.get(row) : null;
+    }
+
+    boolean isEmpty() {
+        return texts == null;
+    }
+
+    // called as each row is added to the column, with null if its value is
+    // formatted by the column's type
+    void add(int row, String text) {
+        if (text != null) {
+            create(row);
+            marked.set(row);
+            texts.add(text);
+        } else if (texts != null) {
+            texts.add("");
+        }
+    }
+
+    void add(ValueText from, int fromrow, int row) {
+        add(row, from.get(fromrow));
+    }
+
+    // called as the rows of from are added to the column, starting at offset
+    void addAll(ValueText from, int offset, int count) {
+        if (from.texts != null) {
+            create(offset);
+            texts.addAll(from.texts);
+            from.marked.stream().forEach(row -> marked.set(offset + row));
+        } else if (texts != null) {
+            for (int i = 0; i < count; i++) {
+                texts.add("");
+            }
+        }
+    }
+
+    // the texts of the rows before row are ""
+    private void create(int row) {
+        if (texts == null) {
+            texts = new StringColumn();
+            for (int i = 0; i < row; i++) {
+                texts.add("");
+            }
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(texts == null ? 0 : 1);
+        if (texts != null) {
+            long[] words = marked.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            texts.write(out);
+        }
+    }
+
+    long getHeapSize() {
+        return texts == null ? 0 : texts.getHeapSize() + marked.size() / 8;
+    }
+}
@@ -15,6 +15,12 @@
  */
 package uk.theretiredprogrammer.reportwriter.language;
 
+import uk.theretiredprogrammer.reportwriter.datasource.BlockSelector;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.functions.BooleanLiteral;
+
 public abstract class BooleanExpression implements Operand<Boolean> {
 
     private final String name;
@@ -34,6 +40,32 @@ public abstract class BooleanExpression implements Operand<Boolean> {
         return locator;
     }
 
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        return this;
+    }
+
+    // evaluates the expression for a block of rows of the dataset (see
+    // BlockSelector); only the rows selected in in are evaluated, so that the
+    // short circuit evaluation of AND and OR is kept
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        BlockSelector.select(start, in, out, row -> evaluate(dataset.getDataRecord(row)));
+    }
+
+    protected BooleanExpression compiled(BooleanExpression expression, boolean constant) {
+        expression.setLocator(locator);
+        if (constant) {
+            try {
+                BooleanLiteral literal = new BooleanLiteral(expression.evaluate(DataRecord.EMPTY));
+                literal.setLocator(locator);
+                return literal;
+            } catch (RuntimeException ex) {
+                // leave the failure to be reported if the expression is ever evaluated
+            }
+        }
+        return expression;
+    }
+
     @Override
     public String toString() {
         return name;
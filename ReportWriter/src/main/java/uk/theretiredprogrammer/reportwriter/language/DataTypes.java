@@ -114,6 +114,23 @@ public class DataTypes {
         throw new RuntimeException("requires a String literal value " + parent.get(key));
     }
 
+    // returns 0 if the parameter is missing
+    public static int isPositiveInteger(ExpressionMap parent, String key) {
+        StringExpression parameter = isStringExpression(parent, key);
+        if (parameter == null) {
+            return 0;
+        }
+        String value = parameter.evaluate(DataRecord.EMPTY);
+        try {
+            int intvalue = Integer.parseInt(value);
+            if (intvalue > 0) {
+                return intvalue;
+            }
+        } catch (NumberFormatException ex) {
+        }
+        throw new RuntimeException("requires a positive integer value " + key + ": " + value);
+    }
+
     public static String getRequiredString(ExpressionMap parameters, String key, String statementname) {
         StringExpression keyparameter = DataTypes.isStringExpression(parameters, key);
         if (keyparameter != null) {
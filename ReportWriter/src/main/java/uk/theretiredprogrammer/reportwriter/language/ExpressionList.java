@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 
 public class ExpressionList extends ArrayList<Operand> implements Operand {
@@ -69,6 +70,16 @@ public class ExpressionList extends ArrayList<Operand> implements Operand {
         return this.stream().map((item) -> item.evaluate( datarecord)).collect(Collectors.toList());
     }
 
+    @Override
+    public ExpressionList compile(ColumnIndex columnindex) {
+        ExpressionList compiled = new ExpressionList();
+        compiled.setLocator(locator);
+        for (Operand operand : this) {
+            compiled.add(operand.compile(columnindex));
+        }
+        return compiled;
+    }
+
     @Override
     public String toString() {
         return "Expression List";
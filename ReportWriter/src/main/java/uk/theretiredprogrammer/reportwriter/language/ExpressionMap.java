@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 
 public class ExpressionMap extends HashMap<String, Operand> implements Operand {
@@ -72,6 +73,16 @@ public class ExpressionMap extends HashMap<String, Operand> implements Operand {
         return result;
     }
 
+    @Override
+    public ExpressionMap compile(ColumnIndex columnindex) {
+        ExpressionMap compiled = new ExpressionMap();
+        compiled.setLocator(locator);
+        for (Entry<String, Operand> e : entrySet()) {
+            compiled.put(e.getKey(), e.getValue().compile(columnindex));
+        }
+        return compiled;
+    }
+
     @Override
     public String toString() {
         return "Expression Map";
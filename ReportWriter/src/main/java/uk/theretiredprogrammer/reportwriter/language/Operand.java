@@ -15,9 +15,21 @@
  */
 package uk.theretiredprogrammer.reportwriter.language;
 
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 
 public interface Operand<T> extends S_Token {
 
     public abstract T evaluate(DataRecord datarecord);
+
+    // true if the operand evaluates to the same value for every datarecord
+    public default boolean isConstant() {
+        return false;
+    }
+
+    // returns an equivalent operand with constant subtrees folded and, if a
+    // columnindex is given, data record field references bound to column positions
+    public default Operand<T> compile(ColumnIndex columnindex) {
+        return this;
+    }
 }
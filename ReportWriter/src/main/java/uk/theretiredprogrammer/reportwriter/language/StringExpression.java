@@ -15,6 +15,10 @@
  */
 package uk.theretiredprogrammer.reportwriter.language;
 
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
 public abstract class StringExpression implements Operand<String> {
 
     private final String name;
@@ -34,6 +38,28 @@ public abstract class StringExpression implements Operand<String> {
         return locator;
     }
     
+    @Override
+    public StringExpression compile(ColumnIndex columnindex) {
+        return this;
+    }
+
+    protected StringExpression compiled(StringExpression expression, boolean constant) {
+        expression.setLocator(locator);
+        if (constant) {
+            try {
+                String value = expression.evaluate(DataRecord.EMPTY);
+                if (value != null) {
+                    StringLiteral literal = new StringLiteral(value);
+                    literal.setLocator(locator);
+                    return literal;
+                }
+            } catch (RuntimeException ex) {
+                // leave the failure to be reported if the expression is ever evaluated
+            }
+        }
+        return expression;
+    }
+
     @Override
     public String toString() {
         return name;
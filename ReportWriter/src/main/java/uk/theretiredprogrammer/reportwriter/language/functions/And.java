@@ -16,7 +16,9 @@
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
@@ -39,8 +41,33 @@ public class And extends BooleanExpression {
         this.rhs = rhs;
     }
 
+    public BooleanExpression getLhs() {
+        return lhs;
+    }
+
+    public BooleanExpression getRhs() {
+        return rhs;
+    }
+
     @Override
     public Boolean evaluate(DataRecord datarecord) {
         return lhs.evaluate(datarecord) && rhs.evaluate(datarecord);
     }
+
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        long[] lhsselected = new long[in.length];
+        lhs.select(dataset, start, in, lhsselected);
+        rhs.select(dataset, start, lhsselected, out);
+    }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        BooleanExpression compiledlhs = lhs.compile(columnindex);
+        BooleanExpression compiledrhs = rhs.compile(columnindex);
+        if (compiledlhs.isConstant() && !compiledlhs.evaluate(DataRecord.EMPTY)) {
+            return compiledlhs;
+        }
+        return compiled(new And(compiledlhs, compiledrhs), compiledlhs.isConstant() && compiledrhs.isConstant());
+    }
 }
@@ -17,6 +17,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -41,4 +42,10 @@ public class Boolean2String extends StringExpression {
     public String evaluate(DataRecord datarecord) {
         return expression.evaluate(datarecord) ? "Yes" : "No";
     }
+
+    @Override
+    public StringExpression compile(ColumnIndex columnindex) {
+        BooleanExpression compiledexpression = expression.compile(columnindex);
+        return compiled(new Boolean2String(compiledexpression), compiledexpression.isConstant());
+    }
 }
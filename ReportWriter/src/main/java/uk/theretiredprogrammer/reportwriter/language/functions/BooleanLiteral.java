@@ -17,6 +17,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
 
 public class BooleanLiteral extends BooleanExpression {
 
@@ -31,4 +32,16 @@ public class BooleanLiteral extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return literal;
     }
+
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        for (int word = 0; word < in.length; word++) {
+            out[word] = literal ? in[word] : 0;
+        }
+    }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnType;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+
+// a data record field reference resolved to a column position at compile time
+public class BoundDataRecordField extends StringExpression {
+
+    private final String fieldname;
+    private final ColumnIndex columnindex;
+    private final int column;
+
+    public BoundDataRecordField(String fieldname, ColumnIndex columnindex, int column) {
+        super("Data field extraction");
+        this.fieldname = fieldname;
+        this.columnindex = columnindex;
+        this.column = column;
+    }
+
+    public String getFieldName() {
+        return fieldname;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public ColumnIndex getColumnIndex() {
+        return columnindex;
+    }
+
+    public ColumnType getColumnType() {
+        return columnindex.getType(column);
+    }
+
+    @Override
+    public String evaluate(DataRecord datarecord) {
+        // records from a dataset with a different column layout fall back to lookup by name
+        return datarecord.getColumnIndex() == columnindex ? datarecord.get(column) : datarecord.get(fieldname);
+    }
+}
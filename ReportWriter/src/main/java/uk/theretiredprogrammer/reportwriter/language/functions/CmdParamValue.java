@@ -18,6 +18,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -51,4 +52,10 @@ public class CmdParamValue extends StringExpression {
         }
         return pval;
     }
+
+    @Override
+    public StringExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledexpression = expression.compile(columnindex);
+        return compiled(new CmdParamValue(compiledexpression), compiledexpression.isConstant());
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import uk.theretiredprogrammer.reportwriter.datasource.BlockSelector;
+import uk.theretiredprogrammer.reportwriter.datasource.Column;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+// an equality comparison (==, =~, != or !=~) of a column with a constant. Blocks
+// of rows are selected by the column itself, comparing its stored representation
+// (eg dictionary codes) with the constant.
+public class ColumnEquals extends BooleanExpression {
+
+    // returns null unless one side is a column and the other a constant
+    static ColumnEquals create(String name, StringExpression lhs, StringExpression rhs, boolean ignorecase, boolean negated) {
+        if (rhs instanceof BoundDataRecordField) {
+            return create(name, rhs, lhs, ignorecase, negated);
+        }
+        if (lhs instanceof BoundDataRecordField field && rhs.isConstant()) {
+            try {
+                return new ColumnEquals(name, field, rhs.evaluate(DataRecord.EMPTY), ignorecase, negated);
+            } catch (RuntimeException ex) {
+                // leave the failure to be reported if the expression is ever evaluated
+            }
+        }
+        return null;
+    }
+
+    private final BoundDataRecordField field;
+    private final String value;
+    private final boolean ignorecase;
+    private final boolean negated;
+    private Column selectorcolumn;
+    private BlockSelector selector;
+
+    private ColumnEquals(String name, BoundDataRecordField field, String value, boolean ignorecase, boolean negated) {
+        super(name);
+        this.field = field;
+        this.value = value;
+        this.ignorecase = ignorecase;
+        this.negated = negated;
+    }
+
+    public BoundDataRecordField getField() {
+        return field;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignorecase;
+    }
+
+    public boolean isNegated() {
+        return negated;
+    }
+
+    @Override
+    public Boolean evaluate(DataRecord datarecord) {
+        String fieldvalue = field.evaluate(datarecord);
+        return (ignorecase ? fieldvalue.equalsIgnoreCase(value) : fieldvalue.equals(value)) != negated;
+    }
+
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        if (dataset.getColumnIndex() != field.getColumnIndex()) {
+            super.select(dataset, start, in, out);
+            return;
+        }
+        Column column = dataset.getColumn(field.getColumn());
+        if (column != selectorcolumn) {
+            selector = column.equalsSelector(value, ignorecase);
+            selectorcolumn = column;
+        }
+        selector.select(start, in, out);
+        if (negated) {
+            for (int word = 0; word < in.length; word++) {
+                out[word] = in[word] & ~out[word];
+            }
+        }
+    }
+}
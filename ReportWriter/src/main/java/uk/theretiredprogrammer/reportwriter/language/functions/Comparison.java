@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import java.math.BigDecimal;
+import java.util.regex.Pattern;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+// the ordering comparisons (<, <=, >, >=). Values are compared numerically if
+// both are numbers, otherwise as strings; a comparison between a typed column
+// and a constant of the column's type is compiled to compare the column's
+// primitive values directly.
+public abstract class Comparison extends BooleanExpression {
+
+    private static final Pattern NUMBER = Pattern.compile("\\s*[-+]?(\\d+(\\.\\d*)?|\\.\\d+)\\s*");
+
+    private final StringExpression leftnode;
+    private final StringExpression rightnode;
+
+    public Comparison(String name, StringExpression leftnode, StringExpression rightnode) {
+        super(name);
+        this.leftnode = leftnode;
+        this.rightnode = rightnode;
+    }
+
+    protected abstract boolean test(int cmp);
+
+    protected abstract Comparison create(StringExpression leftnode, StringExpression rightnode);
+
+    @Override
+    public Boolean evaluate(DataRecord datarecord) {
+        return test(compareValues(leftnode.evaluate(datarecord), rightnode.evaluate(datarecord)));
+    }
+
+    public static int compareValues(String left, String right) {
+        if (NUMBER.matcher(left).matches() && NUMBER.matcher(right).matches()) {
+            return new BigDecimal(left.trim()).compareTo(new BigDecimal(right.trim()));
+        }
+        return left.compareTo(right);
+    }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledleftnode = leftnode.compile(columnindex);
+        StringExpression compiledrightnode = rightnode.compile(columnindex);
+        Comparison comparison = create(compiledleftnode, compiledrightnode);
+        if (compiledleftnode instanceof BoundDataRecordField field && field.getColumnType().isNumeric() && compiledrightnode.isConstant()
+                && TypedComparison.isValue(field, compiledrightnode.evaluate(DataRecord.EMPTY))) {
+            return compiled(new TypedComparison(comparison, field, compiledrightnode.evaluate(DataRecord.EMPTY), false), false);
+        }
+        if (compiledrightnode instanceof BoundDataRecordField field && field.getColumnType().isNumeric() && compiledleftnode.isConstant()
+                && TypedComparison.isValue(field, compiledleftnode.evaluate(DataRecord.EMPTY))) {
+            return compiled(new TypedComparison(comparison, field, compiledleftnode.evaluate(DataRecord.EMPTY), true), false);
+        }
+        return compiled(comparison, compiledleftnode.isConstant() && compiledrightnode.isConstant());
+    }
+}
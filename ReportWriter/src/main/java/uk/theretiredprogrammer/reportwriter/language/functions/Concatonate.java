@@ -16,6 +16,7 @@
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -43,4 +44,11 @@ public class Concatonate extends StringExpression {
     public String evaluate(DataRecord datarecord) {
         return lhs.evaluate(datarecord) + rhs.evaluate(datarecord);
     }
+
+    @Override
+    public StringExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledlhs = lhs.compile(columnindex);
+        StringExpression compiledrhs = rhs.compile(columnindex);
+        return compiled(new Concatonate(compiledlhs, compiledrhs), compiledlhs.isConstant() && compiledrhs.isConstant());
+    }
 }
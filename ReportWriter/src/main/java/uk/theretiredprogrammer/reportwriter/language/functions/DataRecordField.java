@@ -16,6 +16,7 @@
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -41,4 +42,16 @@ public class DataRecordField extends StringExpression {
         return datarecord.get(fieldnameexpression.evaluate(datarecord));
     }
 
+    @Override
+    public StringExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledfieldname = fieldnameexpression.compile(columnindex);
+        if (columnindex != null && compiledfieldname.isConstant()) {
+            String fieldname = compiledfieldname.evaluate(DataRecord.EMPTY);
+            int column = columnindex.indexOf(fieldname);
+            if (column >= 0) {
+                return compiled(new BoundDataRecordField(fieldname, columnindex, column), false);
+            }
+        }
+        return compiled(new DataRecordField(compiledfieldname), false);
+    }
 }
@@ -17,6 +17,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -41,4 +42,10 @@ public class EnvValue extends StringExpression {
     public String evaluate(DataRecord datarecord) {
         return Configuration.getDefault().getEnvironmentValue(expression.evaluate(datarecord));
     }
+
+    @Override
+    public StringExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledexpression = expression.compile(columnindex);
+        return compiled(new EnvValue(compiledexpression), compiledexpression.isConstant());
+    }
 }
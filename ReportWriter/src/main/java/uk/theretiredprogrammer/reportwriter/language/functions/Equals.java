@@ -17,6 +17,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -44,4 +45,15 @@ public class Equals extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return leftnode.evaluate(datarecord).equals(rightnode.evaluate(datarecord));
     }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledleftnode = leftnode.compile(columnindex);
+        StringExpression compiledrightnode = rightnode.compile(columnindex);
+        ColumnEquals columnequals = ColumnEquals.create(toString(), compiledleftnode, compiledrightnode, false, false);
+        if (columnequals != null) {
+            return compiled(columnequals, false);
+        }
+        return compiled(new Equals(compiledleftnode, compiledrightnode), compiledleftnode.isConstant() && compiledrightnode.isConstant());
+    }
 }
@@ -17,7 +17,9 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.RPTWTRException;
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
@@ -41,4 +43,18 @@ public class Not extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord)  {
         return !bexp.evaluate(datarecord);
     }
+
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        bexp.select(dataset, start, in, out);
+        for (int word = 0; word < in.length; word++) {
+            out[word] = in[word] & ~out[word];
+        }
+    }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        BooleanExpression compiledbexp = bexp.compile(columnindex);
+        return compiled(new Not(compiledbexp), compiledbexp.isConstant());
+    }
 }
@@ -17,6 +17,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -44,4 +45,15 @@ public class NotEquals extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return !(lhs.evaluate(datarecord).equals(rhs.evaluate(datarecord)));
     }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledlhs = lhs.compile(columnindex);
+        StringExpression compiledrhs = rhs.compile(columnindex);
+        ColumnEquals columnequals = ColumnEquals.create(toString(), compiledlhs, compiledrhs, false, true);
+        if (columnequals != null) {
+            return compiled(columnequals, false);
+        }
+        return compiled(new NotEquals(compiledlhs, compiledrhs), compiledlhs.isConstant() && compiledrhs.isConstant());
+    }
 }
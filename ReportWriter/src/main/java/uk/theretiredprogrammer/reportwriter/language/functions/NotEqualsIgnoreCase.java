@@ -17,6 +17,7 @@ package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
@@ -44,4 +45,15 @@ public class NotEqualsIgnoreCase extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return !(lhs.evaluate(datarecord).equalsIgnoreCase(rhs.evaluate(datarecord)));
     }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledlhs = lhs.compile(columnindex);
+        StringExpression compiledrhs = rhs.compile(columnindex);
+        ColumnEquals columnequals = ColumnEquals.create(toString(), compiledlhs, compiledrhs, true, true);
+        if (columnequals != null) {
+            return compiled(columnequals, false);
+        }
+        return compiled(new NotEqualsIgnoreCase(compiledlhs, compiledrhs), compiledlhs.isConstant() && compiledrhs.isConstant());
+    }
 }
@@ -16,7 +16,9 @@
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
@@ -43,4 +45,29 @@ public class Or extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return lhs.evaluate(datarecord) || rhs.evaluate(datarecord);
     }
+
+    // the rhs is evaluated just for the rows where the lhs is false
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        long[] lhsselected = new long[in.length];
+        lhs.select(dataset, start, in, lhsselected);
+        long[] remaining = new long[in.length];
+        for (int word = 0; word < in.length; word++) {
+            remaining[word] = in[word] & ~lhsselected[word];
+        }
+        rhs.select(dataset, start, remaining, out);
+        for (int word = 0; word < in.length; word++) {
+            out[word] |= lhsselected[word];
+        }
+    }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        BooleanExpression compiledlhs = lhs.compile(columnindex);
+        BooleanExpression compiledrhs = rhs.compile(columnindex);
+        if (compiledlhs.isConstant() && compiledlhs.evaluate(DataRecord.EMPTY)) {
+            return compiledlhs;
+        }
+        return compiled(new Or(compiledlhs, compiledrhs), compiledlhs.isConstant() && compiledrhs.isConstant());
+    }
 }
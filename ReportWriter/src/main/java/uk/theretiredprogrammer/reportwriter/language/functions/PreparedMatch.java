@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import java.util.function.Predicate;
+import uk.theretiredprogrammer.reportwriter.datasource.BlockSelector;
+import uk.theretiredprogrammer.reportwriter.datasource.Column;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+// a string match against a constant pattern, prepared as a test of the value. If
+// the value is a column, blocks of rows are selected by the column itself (so a
+// dictionary encoded column tests each distinct value once).
+public class PreparedMatch extends BooleanExpression {
+
+    private final StringExpression lhs;
+    private final Predicate<String> test;
+    private Column selectorcolumn;
+    private BlockSelector selector;
+
+    PreparedMatch(String name, StringExpression lhs, Predicate<String> test) {
+        super(name);
+        this.lhs = lhs;
+        this.test = test;
+    }
+
+    @Override
+    public Boolean evaluate(DataRecord datarecord) {
+        return test.test(lhs.evaluate(datarecord));
+    }
+
+    // the pattern is already prepared, but the value may not yet be bound to a column
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledlhs = lhs.compile(columnindex);
+        return compiled(new PreparedMatch(toString(), compiledlhs, test), compiledlhs.isConstant());
+    }
+
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        if (!(lhs instanceof BoundDataRecordField field) || dataset.getColumnIndex() != field.getColumnIndex()) {
+            super.select(dataset, start, in, out);
+            return;
+        }
+        Column column = dataset.getColumn(field.getColumn());
+        if (column != selectorcolumn) {
+            selector = column.matchSelector(test);
+            selectorcolumn = column;
+        }
+        selector.select(start, in, out);
+    }
+}
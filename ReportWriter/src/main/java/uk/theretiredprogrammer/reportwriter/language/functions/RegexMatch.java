@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.OperandStack;
+import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+// true if the regular expression matches within the value (use ^ and $ to match
+// the whole value). Patterns which depend on the row are compiled through a small
+// least recently used cache.
+public class RegexMatch extends StringMatch {
+
+    private static final int CACHESIZE = 64;
+
+    public static void reduce(Language language, OperatorStack operatorstack, OperandStack operandstack) {
+        operatorstack.pop();
+        StringExpression rhs = DataTypes.isStringExpression(operandstack.pop());
+        operandstack.push(new RegexMatch(DataTypes.isStringExpression(operandstack.pop()), rhs));
+    }
+
+    private final Map<String, Pattern> patterns = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > CACHESIZE;
+        }
+    };
+
+    public RegexMatch(StringExpression lhs, StringExpression rhs) {
+        super("REGEXMATCH expression", lhs, rhs);
+    }
+
+    @Override
+    protected boolean test(String value, String pattern) {
+        Pattern compiled;
+        synchronized (patterns) {
+            compiled = patterns.computeIfAbsent(pattern, this::compilePattern);
+        }
+        return compiled.matcher(value).find();
+    }
+
+    @Override
+    protected Predicate<String> prepare(String pattern) {
+        Pattern compiled = compilePattern(pattern);
+        return value -> compiled.matcher(value).find();
+    }
+
+    private Pattern compilePattern(String pattern) {
+        try {
+            return Pattern.compile(pattern);
+        } catch (PatternSyntaxException ex) {
+            throw new RPTWTRRuntimeException("Bad regular expression: " + ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    protected StringMatch create(StringExpression lhs, StringExpression rhs) {
+        return new RegexMatch(lhs, rhs);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import java.util.function.Predicate;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.OperandStack;
+import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+public class StartsWith extends StringMatch {
+
+    public static void reduce(Language language, OperatorStack operatorstack, OperandStack operandstack) {
+        operatorstack.pop();
+        StringExpression rhs = DataTypes.isStringExpression(operandstack.pop());
+        operandstack.push(new StartsWith(DataTypes.isStringExpression(operandstack.pop()), rhs));
+    }
+
+    public StartsWith(StringExpression lhs, StringExpression rhs) {
+        super("STARTSWITH expression", lhs, rhs);
+    }
+
+    @Override
+    protected boolean test(String value, String pattern) {
+        return value.startsWith(pattern);
+    }
+
+    @Override
+    protected Predicate<String> prepare(String pattern) {
+        return value -> value.startsWith(pattern);
+    }
+
+    @Override
+    protected StringMatch create(StringExpression lhs, StringExpression rhs) {
+        return new StartsWith(lhs, rhs);
+    }
+}
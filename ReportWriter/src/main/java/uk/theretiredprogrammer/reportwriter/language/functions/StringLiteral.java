@@ -28,4 +28,9 @@ public class StringLiteral extends StringExpression {
     public String evaluate(DataRecord datarecord) {
         return toString();
     }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
 }
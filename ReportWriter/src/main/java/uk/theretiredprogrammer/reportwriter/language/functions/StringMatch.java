@@ -0,0 +1,59 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import java.util.function.Predicate;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+
+// the string matching operators (startswith, endswith, contains and ~~), which
+// test the left hand value against the right hand pattern. A constant pattern is
+// prepared once, when compiled, as a test of the value (see PreparedMatch).
+public abstract class StringMatch extends BooleanExpression {
+
+    private final StringExpression lhs;
+    private final StringExpression rhs;
+
+    public StringMatch(String name, StringExpression lhs, StringExpression rhs) {
+        super(name);
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    protected abstract boolean test(String value, String pattern);
+
+    protected abstract Predicate<String> prepare(String pattern);
+
+    protected abstract StringMatch create(StringExpression lhs, StringExpression rhs);
+
+    @Override
+    public Boolean evaluate(DataRecord datarecord) {
+        return test(lhs.evaluate(datarecord), rhs.evaluate(datarecord));
+    }
+
+    @Override
+    public BooleanExpression compile(ColumnIndex columnindex) {
+        StringExpression compiledlhs = lhs.compile(columnindex);
+        StringExpression compiledrhs = rhs.compile(columnindex);
+        if (compiledrhs.isConstant()) {
+            Predicate<String> test = prepare(compiledrhs.evaluate(DataRecord.EMPTY));
+            return compiled(new PreparedMatch(toString(), compiledlhs, test), compiledlhs.isConstant());
+        }
+        return compiled(create(compiledlhs, compiledrhs), false);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.language.functions;
+
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.datasource.BlockSelector;
+import uk.theretiredprogrammer.reportwriter.datasource.Column;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnType;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+
+// a comparison of a typed column with a constant of its type, with the constant
+// parsed once at compile time; missing values never satisfy the comparison
+public class TypedComparison extends BooleanExpression {
+
+    // a constant which is not a value of the column's type (eg 2.5 for an integer
+    // column) is left to the comparison, to compare as it compares any values
+    static boolean isValue(BoundDataRecordField field, String constant) {
+        ColumnType type = field.getColumnType();
+        try {
+            if (type.getKind() == ColumnType.Kind.DECIMAL) {
+                type.parseDouble(constant);
+            } else {
+                type.parseLong(constant);
+            }
+            return true;
+        } catch (RPTWTRRuntimeException ex) {
+            return false;
+        }
+    }
+
+    private final Comparison comparison;
+    private final ColumnIndex columnindex;
+    private final int column;
+    private final boolean decimal;
+    private final long longconstant;
+    private final double doubleconstant;
+    private final boolean reversed;
+
+    public TypedComparison(Comparison comparison, BoundDataRecordField field, String constant, boolean reversed) {
+        super(comparison.toString());
+        this.comparison = comparison;
+        this.columnindex = field.getColumnIndex();
+        this.column = field.getColumn();
+        ColumnType type = field.getColumnType();
+        this.decimal = type.getKind() == ColumnType.Kind.DECIMAL;
+        this.longconstant = decimal ? 0 : type.parseLong(constant);
+        this.doubleconstant = decimal ? type.parseDouble(constant) : 0;
+        this.reversed = reversed;
+    }
+
+    @Override
+    public Boolean evaluate(DataRecord datarecord) {
+        if (datarecord.getColumnIndex() != columnindex) {
+            return comparison.evaluate(datarecord);
+        }
+        int cmp;
+        if (decimal) {
+            double value = datarecord.getDouble(column);
+            if (Double.isNaN(value) || Double.isNaN(doubleconstant)) {
+                return false;
+            }
+            cmp = Double.compare(value, doubleconstant);
+        } else {
+            long value = datarecord.getLong(column);
+            if (value == ColumnType.MISSINGLONG || longconstant == ColumnType.MISSINGLONG) {
+                return false;
+            }
+            cmp = Long.compare(value, longconstant);
+        }
+        return comparison.test(reversed ? -cmp : cmp);
+    }
+
+    @Override
+    public void select(StoredDataSet dataset, int start, long[] in, long[] out) {
+        if (dataset.getColumnIndex() != columnindex) {
+            super.select(dataset, start, in, out);
+            return;
+        }
+        Column values = dataset.getColumn(column);
+        if (decimal) {
+            if (Double.isNaN(doubleconstant)) {
+                BlockSelector.NONE.select(start, in, out);
+                return;
+            }
+            BlockSelector.select(start, in, out, row -> {
+                double value = values.getDouble(row);
+                return !Double.isNaN(value) && comparison.test(reversed ? -Double.compare(value, doubleconstant) : Double.compare(value, doubleconstant));
+            });
+        } else {
+            if (longconstant == ColumnType.MISSINGLONG) {
+                BlockSelector.NONE.select(start, in, out);
+                return;
+            }
+            BlockSelector.select(start, in, out, row -> {
+                long value = values.getLong(row);
+                return value != ColumnType.MISSINGLONG && comparison.test(reversed ? -Long.compare(value, longconstant) : Long.compare(value, longconstant));
+            });
+        }
+    }
+}
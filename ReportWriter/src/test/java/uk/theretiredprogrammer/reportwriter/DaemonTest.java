@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DaemonTest {
+
+    @TempDir
+    Path tempdir;
+
+    private Path socketpath;
+    private Daemon daemon;
+    private Thread serving;
+    private String output;
+    private String errors;
+
+    @BeforeEach
+    public void setUp() throws RPTWTRException, IOException {
+        TestConfiguration.create("reportdefinition");
+        socketpath = tempdir.resolve("daemon").resolve("daemon.sock");
+        Path downloads = Files.createDirectories(tempdir.resolve("Downloads"));
+        Files.writeString(downloads.resolve("in.csv"), "K\na\nb\nc\n");
+        // the environment value is folded into the generated dataset's filter
+        Files.writeString(tempdir.resolve("envdef"), """
+                {
+                    data: { src: { match: full, path: "in.csv" } },
+                    generated_data: { sel: { using: src, filter: $K == env RW_K, fields: { K: $K } } },
+                    reports: [ { using: sel, headers: [K], fields: [$K], to: "env.csv" } ]
+                }
+                """);
+        Files.writeString(tempdir.resolve("missingdef"), """
+                {
+                    data: { src: { match: full, path: "missing.csv" } },
+                    reports: [ { using: src, headers: [K], fields: [$K], to: "missing.csv" } ]
+                }
+                """);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException, InterruptedException {
+        if (daemon != null) {
+            daemon.stop();
+            serving.join(10000);
+        }
+    }
+
+    private void start() throws InterruptedException {
+        daemon = new Daemon(socketpath);
+        serving = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (RPTWTRException ex) {
+                fail(ex);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        for (int i = 0; i < 100 && !daemon.isListening(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(daemon.isListening());
+    }
+
+    private int request(String definition, String value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String dir = tempdir.toString();
+        int status = Client.request(socketpath, dir, Map.of("RW_K", value),
+                new String[]{"-l", "-pd", dir, "-od", "out-" + value, "-dd", tempdir.resolve("Downloads").toString(), definition},
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+        output = out.toString(StandardCharsets.UTF_8);
+        errors = err.toString(StandardCharsets.UTF_8);
+        return status;
+    }
+
+    private String report(String value) throws IOException {
+        return Files.readString(tempdir.resolve("out-" + value).resolve("env.csv")).replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    public void testRequests() throws IOException, InterruptedException {
+        System.out.println("daemon requests");
+        start();
+        assertEquals(0, request("envdef", "a"));
+        assertTrue(output.contains("generating sel from src"), output);
+        assertEquals("", errors);
+        assertEquals("\"K\"\n\"a\"\n", report("a"));
+        // a writer is only reused by requests with the environment values it has used
+        assertEquals(0, request("envdef", "b"));
+        assertEquals("\"K\"\n\"b\"\n", report("b"));
+        Files.delete(tempdir.resolve("out-a").resolve("env.csv"));
+        assertEquals(0, request("envdef", "a"));
+        assertEquals("\"K\"\n\"a\"\n", report("a"));
+        assertEquals(3, request("missingdef", "a"));
+        assertTrue(errors.startsWith("Report Execution Failure: "), errors);
+    }
+
+    @Test
+    public void testSharedDirectoryRefused() throws IOException {
+        System.out.println("daemon shared directory");
+        Files.createDirectory(socketpath.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Files.setPosixFilePermissions(socketpath.getParent(), PosixFilePermissions.fromString("rwxr-xr-x"));
+        RPTWTRException ex = assertThrows(RPTWTRException.class, () -> new Daemon(socketpath).serve());
+        assertTrue(ex.getMessage().startsWith("Daemon socket directory must only be accessible by its owner"), ex.getMessage());
+        assertFalse(Files.exists(socketpath));
+    }
+
+    @Test
+    public void testStaleSocket() throws IOException, InterruptedException {
+        System.out.println("daemon stale socket");
+        Files.createDirectory(socketpath.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        try ( ServerSocketChannel stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            stale.bind(UnixDomainSocketAddress.of(socketpath));
+        }
+        assertTrue(Files.exists(socketpath));
+        start();
+        assertEquals(0, request("envdef", "c"));
+        assertEquals("\"K\"\n\"c\"\n", report("c"));
+        // but not one a daemon is listening on
+        RPTWTRException ex = assertThrows(RPTWTRException.class, () -> new Daemon(socketpath).serve());
+        assertEquals("Daemon already running on " + socketpath, ex.getMessage());
+    }
+}
@@ -15,17 +15,44 @@
  */
 package uk.theretiredprogrammer.reportwriter;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import uk.theretiredprogrammer.reportwriter.datasource.DataSetFromCSV;
 import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetAggregator;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetDistinct;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetJoin;
+import uk.theretiredprogrammer.reportwriter.datasource.DataSetSorter;
 import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.DefinitionSource;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.Lexer;
+import uk.theretiredprogrammer.reportwriter.language.Parser;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
 import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
 
 public class DataSourceCSVTest {
 
+    // some tests change the sort limit or the off heap threshold
+    @AfterEach
+    public void tearDown() throws RPTWTRException {
+        TestConfiguration.create("reportdefinition");
+    }
+
     @Test
     @SuppressWarnings("null")
     public void testLoad() {
@@ -76,4 +103,448 @@ public class DataSourceCSVTest {
         i.next();
         assertEquals("richard@rlinsdale.uk", i.next().get("Email"));
     }
+
+    @TempDir
+    Path tempdir;
+
+    private StoredDataSet loadTempCSV(String content) throws IOException {
+        return loadTempCSV(content, null);
+    }
+
+    private StoredDataSet loadTempCSV(String content, ExpressionMap types) throws IOException {
+        try {
+            TestConfiguration.create("reportdefinition");
+        } catch (RPTWTRException ex) {
+            fail("Configuration Failure: " + ex.getLocalizedMessage());
+        }
+        File f = tempdir.resolve("test.csv").toFile();
+        Files.writeString(f.toPath(), content);
+        ExpressionMap parameters = new ExpressionMap();
+        parameters.put("path", new StringLiteral(f.getAbsolutePath()));
+        parameters.put("match", new StringLiteral("full"));
+        if (types != null) {
+            parameters.put("types", types);
+        }
+        return DataSetFromCSV.create("test", parameters);
+    }
+
+    @Test
+    public void testLoadQuoting() throws IOException {
+        System.out.println("load quoting");
+        StoredDataSet dataset = loadTempCSV("A,B,C\r\n \"x, \"\"y\"\"\" ,plain,\"multi\r\nline\"\r\n,,last");
+        Iterator<DataRecord> i = dataset.getStream().iterator();
+        DataRecord dr = i.next();
+        assertEquals("x, \"y\"", dr.get("A"));
+        assertEquals("plain", dr.get("B"));
+        assertEquals("multi\nline", dr.get("C"));
+        dr = i.next();
+        assertEquals("", dr.get("A"));
+        assertEquals("", dr.get("B"));
+        assertEquals("last", dr.get("C"));
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    public void testLoadBadlyFormatted() {
+        System.out.println("load badly formatted");
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> loadTempCSV("A,B\n1,2\n\"3\"x,4\n"));
+        assertTrue(ex.getMessage().contains("extra text after closing quote): line 3: \"3\"x,4"));
+    }
+
+    @Test
+    public void testLoadTyped() throws IOException {
+        System.out.println("load typed");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        types.put("X", new StringLiteral("decimal"));
+        types.put("D", new StringLiteral("date dd/MM/yyyy"));
+        StoredDataSet dataset = loadTempCSV("N,X,D\n10,2.50,01/03/2022\n9,,28/02/2022\n,-1,\n", types);
+        DataRecord dr = dataset.getDataRecord(0);
+        assertEquals("10", dr.get("N"));
+        assertEquals("2.50", dr.get("X"));
+        assertEquals("01/03/2022", dr.get("D"));
+        assertEquals("", dataset.getDataRecord(1).get("X"));
+        assertEquals("", dataset.getDataRecord(2).get("N"));
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("N"));
+        DataSetSorter sorter = new DataSetSorter(dataset.getColumnIndex(), sortfields);
+        dataset.getStream().forEach(record -> sorter.add(record));
+        StoredDataSet sorted = sorter.sort();
+        assertEquals("", sorted.getDataRecord(0).get("N"));
+        assertEquals("9", sorted.getDataRecord(1).get("N"));
+        assertEquals("10", sorted.getDataRecord(2).get("N"));
+        sortfields.set(0, new StringLiteral("D"));
+        DataSetSorter datesorter = new DataSetSorter(dataset.getColumnIndex(), sortfields);
+        dataset.getStream().forEach(record -> datesorter.add(record));
+        assertEquals("28/02/2022", datesorter.sort().getDataRecord(1).get("D"));
+    }
+
+    @Test
+    public void testTypedValuesAsWritten() throws IOException {
+        System.out.println("typed values as written");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        types.put("X", new StringLiteral("decimal"));
+        types.put("D", new StringLiteral("date d/M/yyyy"));
+        List<String> rows = new ArrayList<>(List.of("007,2.50,01/3/2022", "+5,-0.05,1/3/2022", "-0,1e2,1/03/2022",
+                "+03,-0.0,31/12/1999", "0,0.10,1/1/2000", "12,1234567890.12345,2/2/2022", "-4,12345678901234567890.5,3/3/2022",
+                ",.5,", "1,0,1/1/1970", "2,-7,1/1/1970"));
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            long unscaled = random.nextLong() % (i % 2 == 0 ? 1000000L : 1000000000000000L);
+            int scale = random.nextInt(8);
+            rows.add(i + "," + BigDecimal.valueOf(unscaled, scale).toPlainString() + ",1/1/2000");
+        }
+        StoredDataSet dataset = loadTempCSV("N,X,D\n" + String.join("\n", rows) + "\n", types);
+        for (int row = 0; row < rows.size(); row++) {
+            assertEquals(rows.get(row), String.join(",", dataset.getDataRecord(row).getAll()), "row " + row);
+        }
+        assertEquals(5, dataset.getDataRecord(1).getLong(0));
+        assertEquals(100.0, dataset.getDataRecord(2).getDouble(1));
+        // the values are still sorted as values, and copied as written
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("X"));
+        DataSetSorter sorter = new DataSetSorter(dataset.getColumnIndex(), sortfields);
+        dataset.getStream().forEach(dr -> sorter.add(dr));
+        StoredDataSet sorted = sorter.sort();
+        assertEquals(rows.size(), sorted.size());
+        for (int row = 1; row < sorted.size(); row++) {
+            assertTrue(sorted.getDataRecord(row - 1).getDouble(1) <= sorted.getDataRecord(row).getDouble(1)
+                    || Double.isNaN(sorted.getDataRecord(row - 1).getDouble(1)));
+        }
+        assertTrue(rows.contains(String.join(",", sorted.getDataRecord(sorted.size() - 1).getAll())));
+        ExpressionList aggregates = new ExpressionList();
+        aggregates.add(aggregate("max", "max", "N"));
+        aggregates.add(aggregate("min", "min", "X"));
+        DataSetAggregator aggregator = new DataSetAggregator(dataset.getColumnIndex(), null, aggregates);
+        dataset.getStream().limit(8).forEach(dr -> aggregator.add(dr));
+        assertEquals(List.of("12", "-0.05"), new ArrayList<>(aggregator.finish().getDataRecord(0).getAll()));
+    }
+
+    @Test
+    public void testSortLimit() throws IOException {
+        System.out.println("sort limit");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        StringBuilder content = new StringBuilder("I,N\n");
+        for (int i = 0; i < 3000; i++) {
+            content.append(i).append(',').append(i % 11 == 0 ? "" : String.valueOf(i * 7919 % 1000)).append('\n');
+        }
+        StoredDataSet dataset = loadTempCSV(content.toString(), types);
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("N"));
+        DataSetSorter sorter = new DataSetSorter(dataset.getColumnIndex(), sortfields);
+        DataSetSorter first = new DataSetSorter(dataset.getColumnIndex(), sortfields, 1500, false);
+        DataSetSorter top = new DataSetSorter(dataset.getColumnIndex(), sortfields, 10, true);
+        dataset.getStream().forEach(record -> {
+            sorter.add(record);
+            first.add(record);
+            top.add(record);
+        });
+        StoredDataSet sorted = sorter.sort();
+        StoredDataSet firstsorted = first.sort();
+        assertEquals(1500, firstsorted.size());
+        for (int row = 0; row < 1500; row++) {
+            assertEquals(sorted.getDataRecord(row).get("I"), firstsorted.getDataRecord(row).get("I"));
+        }
+        // highest first, with equal values in the order added
+        StoredDataSet topsorted = top.sort();
+        assertEquals(10, topsorted.size());
+        assertEquals("999", topsorted.getDataRecord(0).get("N"));
+        assertEquals("998", topsorted.getDataRecord(3).get("N"));
+        for (int row = 1; row < 10; row++) {
+            DataRecord previous = topsorted.getDataRecord(row - 1);
+            DataRecord current = topsorted.getDataRecord(row);
+            assertTrue(previous.getLong(1) > current.getLong(1)
+                    || (previous.getLong(1) == current.getLong(1) && Integer.parseInt(previous.get("I")) < Integer.parseInt(current.get("I"))));
+        }
+    }
+
+    @Test
+    public void testSortSpill() throws IOException, RPTWTRException {
+        System.out.println("sort spill");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        StringBuilder content = new StringBuilder("I,K,N\n");
+        for (int i = 0; i < 5000; i++) {
+            content.append(i).append(',').append(i % 13 == 0 ? "" : "k" + i % 4).append(',')
+                    .append(i % 17 == 0 ? "" : String.valueOf(i * 31 % 50)).append('\n');
+        }
+        StoredDataSet dataset = loadTempCSV(content.toString(), types);
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("K"));
+        sortfields.add(new StringLiteral("N"));
+        List<String> sorted = sort(dataset, sortfields);
+        // with a sort limit of 10, 500 runs are spilled, and merged in several stages
+        TestConfiguration.createWithOptions("reportdefinition", "-sl", "10");
+        List<String> spilled = sort(dataset, sortfields);
+        assertEquals(sorted, spilled);
+        // equal keys remain in the order added
+        for (int row = 1; row < spilled.size(); row++) {
+            String[] previous = spilled.get(row - 1).split(",", -1);
+            String[] current = spilled.get(row).split(",", -1);
+            int order = previous[1].compareTo(current[1]);
+            if (order == 0) {
+                order = Long.compare(previous[2].isEmpty() ? Long.MIN_VALUE : Long.parseLong(previous[2]),
+                        current[2].isEmpty() ? Long.MIN_VALUE : Long.parseLong(current[2]));
+            }
+            assertTrue(order < 0 || (order == 0 && Integer.parseInt(previous[0]) < Integer.parseInt(current[0])), "row " + row);
+        }
+    }
+
+    private List<String> sort(StoredDataSet dataset, ExpressionList sortfields) {
+        DataSetSorter sorter = new DataSetSorter(dataset.getColumnIndex(), sortfields);
+        dataset.getStream().forEach(dr -> sorter.add(dr));
+        List<String> rows = new ArrayList<>();
+        sorter.sort().getStream().forEachOrdered(dr -> rows.add(String.join(",", dr.getAll())));
+        return rows;
+    }
+
+    @Test
+    public void testLoadTypedBadValue() {
+        System.out.println("load typed bad value");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> loadTempCSV("N\n1\nx\n", types));
+        assertTrue(ex.getMessage().contains("column N (row 2)"));
+    }
+
+    @Test
+    public void testEqualityIndex() throws IOException {
+        System.out.println("equality index");
+        StoredDataSet dataset = loadTempCSV("K,N\nopen,1\nClosed,2\nOPEN,3\nopen,4\n");
+        assertArrayEquals(new int[]{0, 3}, dataset.getMatchingRows(0, "open", false));
+        assertArrayEquals(new int[]{0, 2, 3}, dataset.getMatchingRows(0, "Open", true));
+        assertArrayEquals(new int[0], dataset.getMatchingRows(0, "none", false));
+        dataset.insertDataRecord(List.of("open", "5"));
+        assertArrayEquals(new int[]{0, 3, 4}, dataset.getMatchingRows(0, "open", false));
+    }
+
+    @Test
+    public void testFilterBlocks() throws Exception {
+        System.out.println("filter blocks");
+        StringBuilder content = new StringBuilder("K,N,S\n");
+        for (int i = 0; i < 2500; i++) {
+            content.append((char) ('a' + i % 5)).append(',').append(i % 7 == 0 ? "" : i).append(',').append(i % 3 == 0 ? "X" : "y").append('\n');
+        }
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        StoredDataSet dataset = loadTempCSV(content.toString(), types);
+        DefinitionSource source = new DefinitionSource("($K == b || $S =~ x) && !($N > 2000) && $N != 10 || $K == nosuch");
+        Lexer lexer = new Lexer(source, new SCM_ExpressionLanguage());
+        lexer.lex();
+        BooleanExpression filter = ((BooleanExpression) new Parser(source, new SCM_ExpressionLanguage()).parse())
+                .compile(dataset.getColumnIndex());
+        long[] in = new long[16];
+        long[] out = new long[16];
+        for (int start = 0; start < dataset.size(); start += 1024) {
+            Arrays.fill(in, 0);
+            for (int row = start; row < Math.min(start + 1024, dataset.size()); row++) {
+                in[(row - start) / 64] |= 1L << ((row - start) % 64);
+            }
+            filter.select(dataset, start, in, out);
+            for (int row = start; row < Math.min(start + 1024, dataset.size()); row++) {
+                boolean selected = (out[(row - start) / 64] & (1L << ((row - start) % 64))) != 0;
+                assertEquals(filter.evaluate(dataset.getDataRecord(row)), selected, "row " + row);
+            }
+        }
+    }
+
+    @Test
+    public void testLoadGlob() throws IOException {
+        System.out.println("load glob");
+        try {
+            TestConfiguration.create("reportdefinition");
+        } catch (RPTWTRException ex) {
+            fail("Configuration Failure: " + ex.getLocalizedMessage());
+        }
+        Files.writeString(tempdir.resolve("shard_2.csv"), "K,N\nc,3\n");
+        Files.writeString(tempdir.resolve("shard_1.csv"), "K,N\na,1\nb,2\n");
+        Files.writeString(tempdir.resolve("other.csv"), "K,N\nx,9\n");
+        ExpressionMap parameters = new ExpressionMap();
+        parameters.put("path", new StringLiteral(tempdir.resolve("shard_*.csv").toString()));
+        parameters.put("match", new StringLiteral("glob"));
+        parameters.put("source_column", new StringLiteral("F"));
+        StoredDataSet dataset = DataSetFromCSV.create("shards", parameters);
+        List<String> rows = new ArrayList<>();
+        dataset.getStream().forEachOrdered(dr -> rows.add(dr.get("K") + dr.get("N") + ":" + dr.get("F")));
+        assertEquals(List.of("a1:shard_1.csv", "b2:shard_1.csv", "c3:shard_2.csv"), rows);
+        Files.writeString(tempdir.resolve("shard_3.csv"), "K,M\nd,4\n");
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> DataSetFromCSV.create("shards", parameters));
+        assertTrue(ex.getMessage().contains("header line differs"));
+    }
+
+    @Test
+    public void testJoin() throws IOException {
+        System.out.println("join");
+        StoredDataSet left = loadTempCSV("K,V\na,1\nb,2\na,3\nc,4\n");
+        StoredDataSet right = loadTempCSV("K,V\na,x\nb,y\na,z\nd,w\nd,v\n");
+        ExpressionList on = new ExpressionList();
+        on.add(new StringLiteral("K"));
+        for (DataSetJoin.Type type : DataSetJoin.Type.values()) {
+            // the left dataset is the smaller, so the join is built on the left
+            DataSetJoin join = new DataSetJoin(left, "right", right, on, null, type);
+            assertEquals(List.of("K", "V", "right.V"), join.getColumnIndex().getHeaders());
+            List<String> joined = new ArrayList<>();
+            left.getStream().forEach(dr -> join.add(dr, out -> joined.add(String.join("", out.getAll()))));
+            join.finish(out -> joined.add(String.join("", out.getAll())));
+            assertEquals(type == DataSetJoin.Type.INNER
+                    ? List.of("a1x", "a1z", "b2y", "a3x", "a3z")
+                    : List.of("a1x", "a1z", "b2y", "a3x", "a3z", "c4"), joined);
+        }
+    }
+
+    private ExpressionMap aggregate(String name, String function, String field) {
+        ExpressionMap aggregate = new ExpressionMap();
+        aggregate.put("name", new StringLiteral(name));
+        aggregate.put(function, new DataRecordField(new StringLiteral(field)));
+        return aggregate;
+    }
+
+    @Test
+    public void testAggregate() throws IOException {
+        System.out.println("aggregate");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        StoredDataSet dataset = loadTempCSV("K,N,S\nb,1,x\na,5,y\nb,,x\nb,-3,z\n", types);
+        ExpressionList groupby = new ExpressionList();
+        groupby.add(new StringLiteral("K"));
+        ExpressionList aggregates = new ExpressionList();
+        aggregates.add(aggregate("count", "count", "N"));
+        aggregates.add(aggregate("sum", "sum", "N"));
+        aggregates.add(aggregate("min", "min", "N"));
+        aggregates.add(aggregate("max", "max", "S"));
+        aggregates.add(aggregate("distinct", "distinct_count", "S"));
+        DataSetAggregator aggregator = new DataSetAggregator(dataset.getColumnIndex(), groupby, aggregates);
+        dataset.getStream().forEach(dr -> aggregator.add(dr));
+        StoredDataSet aggregated = aggregator.finish();
+        assertEquals(List.of("K", "count", "sum", "min", "max", "distinct"), aggregated.getHeaders());
+        assertEquals(2, aggregated.size());
+        assertEquals(List.of("b", "2", "-2", "-3", "z", "2"), new ArrayList<>(aggregated.getDataRecord(0).getAll()));
+        assertEquals(List.of("a", "1", "5", "5", "y", "1"), new ArrayList<>(aggregated.getDataRecord(1).getAll()));
+    }
+
+    @Test
+    public void testAggregateSpill() throws IOException, RPTWTRException {
+        System.out.println("aggregate spill");
+        ExpressionMap types = new ExpressionMap();
+        types.put("N", new StringLiteral("integer"));
+        types.put("X", new StringLiteral("decimal"));
+        StringBuilder content = new StringBuilder("K,L,N,X,S\n");
+        for (int i = 0; i < 5000; i++) {
+            content.append("k").append(i * 7919 % 499).append(',').append(i % 2).append(',')
+                    .append(i % 9 == 0 ? "" : String.valueOf(i % 101 - 50)).append(',')
+                    .append(i % 3 == 0 ? "2.50" : i % 3 == 1 ? "2.5" : "-" + i % 10 + ".25").append(',')
+                    .append((char) ('a' + i % 7)).append('\n');
+        }
+        StoredDataSet dataset = loadTempCSV(content.toString(), types);
+        ExpressionList groupby = new ExpressionList();
+        groupby.add(new StringLiteral("K"));
+        groupby.add(new StringLiteral("L"));
+        ExpressionList aggregates = new ExpressionList();
+        aggregates.add(aggregate("count", "count", "N"));
+        aggregates.add(aggregate("sum", "sum", "N"));
+        aggregates.add(aggregate("min", "min", "N"));
+        aggregates.add(aggregate("max", "max", "X"));
+        aggregates.add(aggregate("distinct", "distinct_count", "S"));
+        List<String> aggregated = aggregate(dataset, groupby, aggregates);
+        assertEquals(998, aggregated.size());
+        // with a sort limit of 5, groups are spilled almost every row, and the runs
+        // merged in several stages - the groups are still output in the order first seen
+        TestConfiguration.createWithOptions("reportdefinition", "-sl", "5");
+        assertEquals(aggregated, aggregate(dataset, groupby, aggregates));
+    }
+
+    @Test
+    public void testAggregateDecimalSum() throws IOException, RPTWTRException {
+        System.out.println("aggregate decimal sum");
+        ExpressionMap types = new ExpressionMap();
+        types.put("X", new StringLiteral("decimal"));
+        StringBuilder content = new StringBuilder("K,X,U\n");
+        for (int i = 0; i < 1000; i++) {
+            content.append("a,12.34,12.34\n");
+        }
+        content.append("b,0.1,0.1\nb,0.2,0.2\n");
+        // values not held exactly by a double, or not in canonical form
+        content.append("c,1.5,1.5\nc,2.25,2.25\nc,.5,.5\nc,+1,+1\nc,1e1,1e1\nc,,\nc,0.123456789012345678,0.123456789012345678\n");
+        content.append("d,1.10,1.10\nd,2,2\nd,-0.05,-0.05\n");
+        // sums which overflow a long of their decimal places
+        for (int i = 0; i < 200; i++) {
+            content.append("e,99999999999999.9,999999999999999999.99\n");
+        }
+        StoredDataSet dataset = loadTempCSV(content.toString(), types);
+        ExpressionList groupby = new ExpressionList();
+        groupby.add(new StringLiteral("K"));
+        ExpressionList aggregates = new ExpressionList();
+        aggregates.add(aggregate("typed", "sum", "X"));
+        aggregates.add(aggregate("untyped", "sum", "U"));
+        List<String> aggregated = aggregate(dataset, groupby, aggregates);
+        BigDecimal e = new BigDecimal("99999999999999.9").multiply(BigDecimal.valueOf(200));
+        BigDecimal eu = new BigDecimal("999999999999999999.99").multiply(BigDecimal.valueOf(200));
+        assertEquals(List.of("a,12340.00,12340.00", "b,0.3,0.3",
+                "c,15.373456789012345678,15.373456789012345678", "d,3.05,3.05",
+                "e," + e.toPlainString() + "," + eu.toPlainString()), aggregated);
+        // sums are merged exactly when spilled
+        TestConfiguration.createWithOptions("reportdefinition", "-sl", "1");
+        assertEquals(aggregated, aggregate(dataset, groupby, aggregates));
+    }
+
+    private List<String> aggregate(StoredDataSet dataset, ExpressionList groupby, ExpressionList aggregates) {
+        DataSetAggregator aggregator = new DataSetAggregator(dataset.getColumnIndex(), groupby, aggregates);
+        dataset.getStream().forEach(dr -> aggregator.add(dr));
+        List<String> rows = new ArrayList<>();
+        aggregator.finish().getStream().forEachOrdered(dr -> rows.add(String.join(",", dr.getAll())));
+        return rows;
+    }
+
+    @Test
+    public void testDistinct() throws IOException, RPTWTRException {
+        System.out.println("distinct");
+        StringBuilder content = new StringBuilder("K,V\n");
+        for (int i = 0; i < 2000; i++) {
+            content.append(i * 7 % 300).append(',').append(i / 300 % 3).append('\n');
+        }
+        StoredDataSet dataset = loadTempCSV(content.toString());
+        ExpressionList keyfields = new ExpressionList();
+        keyfields.add(new StringLiteral("K"));
+        List<String> all = distinct(dataset, null);
+        List<String> keyed = distinct(dataset, keyfields);
+        assertEquals(900, all.size());
+        assertEquals(List.of("0,0", "7,0", "14,0"), all.subList(0, 3));
+        assertEquals(300, keyed.size());
+        // with more keys than the sort limit, the later keys are spilled - with the same result
+        TestConfiguration.createWithOptions("reportdefinition", "-sl", "50");
+        assertEquals(all, distinct(dataset, null));
+        assertEquals(keyed, distinct(dataset, keyfields));
+    }
+
+    private List<String> distinct(StoredDataSet dataset, ExpressionList keyfields) {
+        DataSetDistinct distinct = new DataSetDistinct(dataset.getColumnIndex(), keyfields);
+        List<String> rows = new ArrayList<>();
+        dataset.getStream().forEach(dr -> distinct.add(dr, out -> rows.add(String.join(",", out.getAll()))));
+        distinct.finish(out -> rows.add(String.join(",", out.getAll())));
+        return rows;
+    }
+
+    @Test
+    public void testOffHeap() throws RPTWTRException {
+        System.out.println("off heap");
+        TestConfiguration.createWithOptions("reportdefinition", "-oh", "1");
+        StoredDataSet dataset = new StoredDataSet(List.of("K", "V"));
+        for (int i = 0; i < 200000; i++) {
+            dataset.insertDataRecord(List.of("k" + i + "\u00e9", String.valueOf(i % 5)));
+        }
+        assertTrue(dataset.isOffHeap());
+        assertEquals(200000, dataset.size());
+        assertEquals("k0\u00e9", dataset.getDataRecord(0).get("K"));
+        assertEquals("k123456\u00e9", dataset.getDataRecord(123456).get("K"));
+        assertEquals("4", dataset.getDataRecord(199999).get("V"));
+        // the low cardinality column stays dictionary encoded, so can be indexed
+        assertNull(dataset.getMatchingRows(0, "k1\u00e9", false));
+        assertEquals(40000, dataset.getMatchingRows(1, "3", false).length);
+        long[] in = new long[]{-1L, -1L};
+        long[] out = new long[2];
+        dataset.getColumn(0).equalsSelector("k70\u00e9", false).select(64, in, out);
+        assertArrayEquals(new long[]{1L << 6, 0}, out);
+    }
 }
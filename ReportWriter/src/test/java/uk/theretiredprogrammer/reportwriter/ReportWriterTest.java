@@ -15,10 +15,27 @@
  */
 package uk.theretiredprogrammer.reportwriter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.StoredDataSet;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
 
 public class ReportWriterTest {
 
@@ -45,4 +62,161 @@ public class ReportWriterTest {
             fail(ex.getLocalizedMessage());
         }
     }
+
+    @TempDir
+    Path tempdir;
+
+    @Test
+    public void testScanFailureClosesOutput() throws RPTWTRException, IOException {
+        System.out.println("scan failure closes output");
+        TestConfiguration.create("reportdefinition");
+        StoredDataSet source = new StoredDataSet(List.of("K"));
+        for (int i = 0; i < 3000; i++) {
+            source.insertDataRecord(List.of("k" + i));
+        }
+        File to = tempdir.resolve("failed.csv.gz").toFile();
+        ExpressionMap parameters = new ExpressionMap();
+        parameters.put("using", new StringLiteral("source"));
+        ExpressionList headers = new ExpressionList();
+        headers.add(new StringLiteral("K"));
+        parameters.put("headers", headers);
+        ExpressionList fields = new ExpressionList();
+        fields.add(new DataRecordField(new StringLiteral("K")));
+        parameters.put("fields", fields);
+        parameters.put("to", new StringLiteral(to.getAbsolutePath()));
+        ReportStatement report = new ReportStatement(parameters);
+        ScanConsumer failing = new ScanConsumer(parameters, "failing") {
+            @Override
+            void accept(DataRecord datarecord) {
+                throw new RuntimeException("failing consumer");
+            }
+
+            @Override
+            void finish() {
+            }
+        };
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> new SharedScan(source, List.of(report, failing)).run());
+        assertEquals("failing consumer", ex.getMessage());
+        // the report's output has been closed, so is a complete compressed file
+        try ( GZIPInputStream in = new GZIPInputStream(new FileInputStream(to))) {
+            String[] lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+            assertEquals("\"K\"", lines[0]);
+            assertEquals("\"k0\"", lines[1]);
+        }
+    }
+
+    private ReportWriter reportwriter;
+    private String listing;
+
+    // a single run (createAll) folds views, builds only the generated datasets the
+    // reports need, and releases datasets as they are finished with - otherwise
+    // each stage is run for all statements
+    private void run(String definition, boolean singlerun, String outputdir) throws RPTWTRException, IOException {
+        Path downloads = tempdir.resolve("Downloads");
+        if (!Files.exists(downloads)) {
+            Files.createDirectory(downloads);
+            Files.writeString(downloads.resolve("in.csv"), "K,R,A\nk1,x,5\nk2,y,7\nk3,x,9\nk4,z,2\nk5,x,1\n");
+            Files.writeString(downloads.resolve("other.csv"), "K,N\nk1,one\nk3,three\nk4,four\n");
+        }
+        Path definitionfile = tempdir.resolve(definition);
+        if (!Files.exists(definitionfile)) {
+            Files.writeString(definitionfile, DEFINITIONS.get(definition));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String dir = tempdir.toString();
+        Configuration configuration = Configuration.createRequest(
+                new String[]{"-l", "-t", "1", "-pd", dir, "-od", outputdir, "-dd", downloads.toString(), definition},
+                dir, Map.of(), new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+        try {
+            reportwriter = new ReportWriter(configuration.getReportFile());
+            if (singlerun) {
+                reportwriter.createAll();
+            } else {
+                reportwriter.loadDataFiles();
+                reportwriter.createAllGeneratedFiles();
+                reportwriter.createAllReports();
+            }
+        } finally {
+            Configuration.endRequest();
+        }
+        listing = out.toString(StandardCharsets.UTF_8);
+    }
+
+    private String output(String outputdir, String report) throws IOException {
+        return Files.readString(tempdir.resolve(outputdir).resolve(report));
+    }
+
+    private static final Map<String, String> DEFINITIONS = Map.of(
+            "viewdef", """
+                {
+                    data: { src: { match: full, path: "in.csv" } },
+                    generated_data: { v1: { using: src, filter: $R == x }, v2: { using: v1, filter: $A != 9 } },
+                    reports: [ { using: v2, headers: [K, A], fields: [$K, $A], to: "view.csv" } ]
+                }
+                """,
+            "unuseddef", """
+                {
+                    data: { src: { match: full, path: "in.csv" } },
+                    generated_data: { sorted: { using: src, sort_by: [A] }, unused: { using: src, sort_by: [R] } },
+                    reports: [ { using: sorted, headers: [K], fields: [$K], to: "sorted.csv" } ]
+                }
+                """,
+            "sharedef", """
+                {
+                    data: { src: { match: full, path: "in.csv" }, other: { match: full, path: "other.csv" } },
+                    generated_data: { base: { using: src, sort_by: [R, K] },
+                                      joined: { using: other, join: { with: base, on: [K] } } },
+                    reports: [ { using: base, headers: [K, R], fields: [$K, $R], to: "base.csv" },
+                               { using: joined, headers: [K, N, R], fields: [$K, $N, $R], to: "joined.csv" } ]
+                }
+                """);
+
+    @Test
+    public void testFoldedViews() throws RPTWTRException, IOException {
+        System.out.println("folded views");
+        run("viewdef", true, "folded");
+        // a chain of filter only views, each with a single consumer, is folded into
+        // the next (so v2 then streams from src) and streamed to the report
+        assertTrue(listing.contains("streaming v2 from src (not stored)"), listing);
+        assertTrue(listing.contains("streaming v1 from src (not stored)"), listing);
+        assertFalse(listing.contains("generating"), listing);
+        run("viewdef", false, "unfolded");
+        assertTrue(listing.contains("generating v1 from src"), listing);
+        assertTrue(listing.contains("generating v2 from v1"), listing);
+        assertEquals(output("unfolded", "view.csv"), output("folded", "view.csv"));
+        assertEquals("\"K\",\"A\"\n\"k1\",\"5\"\n\"k5\",\"1\"\n", output("folded", "view.csv").replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    public void testUnusedNotGenerated() throws RPTWTRException, IOException {
+        System.out.println("unused generated data");
+        run("unuseddef", true, "single");
+        assertTrue(listing.contains("generating sorted from src"), listing);
+        assertFalse(listing.contains("generating unused"), listing);
+        assertEquals("\"K\"\n\"k5\"\n\"k4\"\n\"k1\"\n\"k2\"\n\"k3\"\n", output("single", "sorted.csv").replace(System.lineSeparator(), "\n"));
+        // but all are generated when run stage by stage
+        run("unuseddef", false, "staged");
+        assertTrue(listing.contains("generating unused from src"), listing);
+        assertNotNull(reportwriter.getDataSet("unused"));
+    }
+
+    @Test
+    public void testReleasedAfterLastConsumer() throws RPTWTRException, IOException {
+        System.out.println("released after last consumer");
+        // with a single thread the report of base and the join with base run one after
+        // the other, so the second would fail if base was released after the first
+        run("sharedef", true, "single");
+        assertEquals("\"K\",\"R\"\n\"k1\",\"x\"\n\"k3\",\"x\"\n\"k5\",\"x\"\n\"k2\",\"y\"\n\"k4\",\"z\"\n",
+                output("single", "base.csv").replace(System.lineSeparator(), "\n"));
+        assertEquals("\"K\",\"N\",\"R\"\n\"k1\",\"one\",\"x\"\n\"k3\",\"three\",\"x\"\n\"k4\",\"four\",\"z\"\n",
+                output("single", "joined.csv").replace(System.lineSeparator(), "\n"));
+        // and each dataset is released once its last consumer has finished
+        for (String datasetname : List.of("src", "other", "base", "joined")) {
+            assertNull(reportwriter.getDataSet(datasetname), datasetname);
+        }
+        // datasets are kept when run stage by stage
+        run("sharedef", false, "staged");
+        assertNotNull(reportwriter.getDataSet("base"));
+        assertEquals(output("single", "joined.csv"), output("staged", "joined.csv"));
+    }
 }
@@ -28,4 +28,15 @@ public class TestConfiguration {
                 new String[]{"-pd", "TESTRPTWTR", "-od", "output", "-dd", "TESTRPTWTR/Downloads", reportdefinition, commandparameter}
         );
     }
+
+    // a configuration with further options (eg a small sort limit) - tests using
+    // this should recreate the default configuration afterwards
+    public static void createWithOptions(String reportdefinition, String... options) throws RPTWTRException {
+        String[] args = new String[options.length + 8];
+        System.arraycopy(new String[]{"-pd", "TESTRPTWTR", "-od", "output", "-dd", "TESTRPTWTR/Downloads"}, 0, args, 0, 6);
+        System.arraycopy(options, 0, args, 6, options.length);
+        args[options.length + 6] = reportdefinition;
+        args[options.length + 7] = "<undefined>";
+        Configuration.create(args);
+    }
 }
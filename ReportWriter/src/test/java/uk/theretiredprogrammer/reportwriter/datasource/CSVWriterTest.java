@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.TestConfiguration;
+
+public class CSVWriterTest {
+
+    private static final List<String> HEADERS = List.of("A", "B", "C");
+    private static final String EMOJI = "😀";
+
+    @TempDir
+    Path tempdir;
+
+    // values which are quoted, or need 2, 3 and 4 byte encodings, including
+    // values longer than the writer's buffer
+    private static List<List<String>> records() {
+        List<List<String>> records = new ArrayList<>();
+        records.add(HEADERS);
+        records.add(List.of("say \"hello\"", "a,b", "line 1\nline 2"));
+        records.add(List.of("", "été £", "€20 中文"));
+        records.add(List.of(EMOJI, "x" + EMOJI + "y", "\"\""));
+        for (int offset = 0; offset < 8; offset++) {
+            records.add(List.of("x".repeat(256 * 1024 - 12 + offset) + EMOJI + "é", "€".repeat(offset) + EMOJI, ""));
+        }
+        return records;
+    }
+
+    // values which encode the same in any default charset
+    private static List<List<String>> asciiRecords() {
+        List<List<String>> records = new ArrayList<>();
+        records.add(HEADERS);
+        records.add(List.of("say \"hello\"", "a,b", "line 1\nline 2"));
+        records.add(List.of("x".repeat(256 * 1024 + 5), "", "\"\""));
+        return records;
+    }
+
+    private static void write(CSVWriter writer, List<List<String>> records) throws IOException {
+        for (List<String> record : records) {
+            writer.writeRecord(new DataRecord(HEADERS, record));
+        }
+        writer.close();
+    }
+
+    private static List<List<String>> read(File file, Charset charset) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        new CSVReader(file, charset).read(fields -> records.add(List.copyOf(fields)));
+        return records;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("CSV writer round trip");
+        File file = tempdir.resolve("roundtrip.csv").toFile();
+        write(new CSVWriter(new FileOutputStream(file), StandardCharsets.UTF_8), records());
+        assertEquals(records(), read(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEncoding() throws IOException {
+        System.out.println("CSV writer encoding");
+        String value = "q\"" + "é€" + EMOJI + "\ud83d" + "z";
+        ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+        write(new CSVWriter(utf8, StandardCharsets.UTF_8), List.of(List.of(value, "", "a")));
+        // an unpaired surrogate is replaced, as String.getBytes does
+        String expected = "\"q\"\"é€" + EMOJI + "?z\",\"\",\"a\"" + System.lineSeparator();
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), utf8.toByteArray());
+        ByteArrayOutputStream latin1 = new ByteArrayOutputStream();
+        write(new CSVWriter(latin1, StandardCharsets.ISO_8859_1), List.of(List.of(value, "", "a")));
+        assertArrayEquals(expected.getBytes(StandardCharsets.ISO_8859_1), latin1.toByteArray());
+        // a character is never split across a flush of the 256KB buffer
+        for (int offset = 0; offset < 8; offset++) {
+            String longvalue = "x".repeat(256 * 1024 - 6 + offset) + EMOJI + "€é";
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(new CSVWriter(bytes, StandardCharsets.UTF_8), List.of(List.of(longvalue, "", "")));
+            assertArrayEquals(("\"" + longvalue + "\",\"\",\"\"" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+        }
+    }
+
+    // the report is written in the default charset
+    @Test
+    public void testCompressed() throws IOException, RPTWTRException {
+        System.out.println("CSV writer compressed");
+        TestConfiguration.create("reportdefinition");
+        File compressed = tempdir.resolve("roundtrip.csv.gz").toFile();
+        DataSetToCSV csv = new DataSetToCSV(compressed.getAbsolutePath());
+        for (List<String> record : asciiRecords()) {
+            csv.write(new DataRecord(HEADERS, record));
+        }
+        csv.close();
+        File file = tempdir.resolve("uncompressed.csv").toFile();
+        try ( GZIPInputStream in = new GZIPInputStream(new FileInputStream(compressed))) {
+            Files.copy(in, file.toPath());
+        }
+        assertEquals(asciiRecords(), read(file, Charset.defaultCharset()));
+    }
+}
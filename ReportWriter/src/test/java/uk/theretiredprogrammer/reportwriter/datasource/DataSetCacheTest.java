@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.TestConfiguration;
+
+public class DataSetCacheTest {
+
+    @TempDir
+    Path tempdir;
+
+    private File source;
+
+    @BeforeEach
+    public void setUp() throws RPTWTRException {
+        TestConfiguration.createWithOptions("reportdefinition", "-od", tempdir.toString());
+        source = tempdir.resolve("source.csv").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws RPTWTRException {
+        TestConfiguration.create("reportdefinition");
+    }
+
+    private void writeSource(String content, long modified) throws IOException {
+        Files.writeString(source.toPath(), content);
+        Files.setLastModifiedTime(source.toPath(), FileTime.fromMillis(modified));
+    }
+
+    private static StoredDataSet dataset() {
+        StoredDataSet dataset = new StoredDataSet(new ColumnIndex(List.of("S", "N", "X"),
+                List.of(ColumnType.STRING, ColumnType.INTEGER, ColumnType.DECIMAL)));
+        dataset.insertDataRecord(List.of("a", "+5", "2.50"));
+        dataset.insertDataRecord(List.of("b", "", "1e3"));
+        return dataset;
+    }
+
+    private StoredDataSet load(String typesignature) throws IOException {
+        return new DataSetCache(source, typesignature).load();
+    }
+
+    @Test
+    public void testHitAndMiss() throws IOException {
+        System.out.println("cache hit and miss");
+        long modified = System.currentTimeMillis() - 3600000;
+        writeSource("S,N,X\na,+5,2.50\nb,,1e3\n", modified);
+        assertNull(load("types"));
+        new DataSetCache(source, "types").save(dataset());
+        StoredDataSet cached = load("types");
+        assertNotNull(cached);
+        assertEquals(List.of("S", "N", "X"), cached.getHeaders());
+        assertEquals(ColumnType.DECIMAL, cached.getColumnIndex().getType(2));
+        assertEquals(List.of("a", "+5", "2.50"), List.copyOf(cached.getDataRecord(0).getAll()));
+        assertEquals(List.of("b", "", "1e3"), List.copyOf(cached.getDataRecord(1).getAll()));
+        // a snapshot is only used for the same column types
+        assertNull(load("othertypes"));
+        // a file which has not been recently modified is trusted while its size
+        // and modified time are unchanged, without reading its content
+        writeSource("S,N,X\nz,+5,2.50\nb,,1e3\n", modified);
+        assertNotNull(load("types"));
+        writeSource("S,N,X\nz,+5,2.50\nb,,1e3\n", modified + 1000);
+        assertNull(load("types"));
+        writeSource("S,N,X\na,+5,2.50\nb,,1e3\nc,,\n", modified);
+        assertNull(load("types"));
+    }
+
+    @Test
+    public void testRecentlyModified() throws IOException {
+        System.out.println("cache recently modified");
+        long modified = System.currentTimeMillis();
+        writeSource("S,N,X\na,+5,2.50\nb,,1e3\n", modified);
+        DataSetCache cache = new DataSetCache(source, "types");
+        assertNull(cache.load());
+        cache.save(dataset());
+        assertNotNull(load("types"));
+        // the file was modified as the snapshot was taken, so the content is checked
+        writeSource("S,N,X\nz,+5,2.50\nb,,1e3\n", modified);
+        assertNull(load("types"));
+        writeSource("S,N,X\na,+5,2.50\nb,,1e3\n", modified);
+        assertNotNull(load("types"));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.TestConfiguration;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+public class DataSetFromCSVTest {
+
+    @TempDir
+    Path tempdir;
+
+    @BeforeEach
+    public void setUp() throws RPTWTRException {
+        TestConfiguration.create("reportdefinition");
+    }
+
+    @AfterEach
+    public void tearDown() throws RPTWTRException {
+        TestConfiguration.create("reportdefinition");
+    }
+
+    private File write(String content) throws IOException {
+        File file = tempdir.resolve("parallel.csv").toFile();
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    private static List<List<String>> readSequential(File file) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        new CSVReader(file).read(fields -> records.add(List.copyOf(fields)));
+        return records.subList(1, records.size());
+    }
+
+    private static List<List<String>> rows(StoredDataSet dataset) {
+        List<List<String>> rows = new ArrayList<>();
+        for (int row = 0; row < dataset.size(); row++) {
+            rows.add(List.copyOf(dataset.getDataRecord(row).getAll()));
+        }
+        return rows;
+    }
+
+    @Test
+    public void testFindLineStart() throws IOException {
+        System.out.println("find line start");
+        File file = write("A,B\r\n1,2\n\"x\ny\",3");
+        CSVReader reader = new CSVReader(file);
+        assertEquals(0, reader.findLineStart(0));
+        assertEquals(5, reader.findLineStart(1));
+        assertEquals(5, reader.findLineStart(4));
+        assertEquals(5, reader.findLineStart(5));
+        assertEquals(9, reader.findLineStart(6));
+        // within a quoted field, the line start is found regardless
+        assertEquals(12, reader.findLineStart(10));
+        assertEquals(file.length(), reader.findLineStart(13));
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        System.out.println("parallel parse matches sequential");
+        StringBuilder content = new StringBuilder("id,text,value\n");
+        for (int i = 0; i < 400; i++) {
+            String text = switch (i % 5) {
+                case 0 ->
+                    "\"line " + i + "\nnext, \"\"quoted\"\"\r\nlast\"";
+                case 1 ->
+                    "\"a,b " + i + "\"";
+                default ->
+                    "plain " + i;
+            };
+            content.append(i).append(',').append(text).append(",v").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        File file = write(content.toString());
+        List<List<String>> expected = readSequential(file);
+        assertEquals(400, expected.size());
+        int parallel = 0;
+        int fallback = 0;
+        for (int threads = 2; threads <= 64; threads++) {
+            StoredDataSet dataset = new DataSetFromCSV().readParallel(file, null, threads);
+            if (dataset == null) {
+                // a chunk started within a quoted field
+                fallback++;
+            } else {
+                assertEquals(expected, rows(dataset), "threads " + threads);
+                parallel++;
+            }
+        }
+        assertTrue(parallel > 0);
+        assertTrue(fallback > 0);
+    }
+
+    @Test
+    public void testChunkStartInQuotedField() throws IOException {
+        System.out.println("chunk start in quoted field");
+        StringBuilder content = new StringBuilder("A,B\n");
+        for (int i = 0; i < 10; i++) {
+            content.append(i).append(",x\n");
+        }
+        // the split point falls within this field, at a line which would
+        // otherwise parse as a record
+        content.append("q,\"").append("y,z\n".repeat(50)).append("\"\n");
+        for (int i = 0; i < 10; i++) {
+            content.append(i).append(",x\n");
+        }
+        File file = write(content.toString());
+        long split = new CSVReader(file).findLineStart(file.length() / 2);
+        assertEquals("y,z\n", content.substring((int) split, (int) split + 4));
+        assertNull(new DataSetFromCSV().readParallel(file, null, 2));
+        List<List<String>> expected = readSequential(file);
+        assertEquals(21, expected.size());
+        assertEquals("y,z\n".repeat(50), expected.get(10).get(1));
+    }
+
+    @Test
+    public void testParallelMultibyte() throws IOException {
+        System.out.println("parallel parse multibyte");
+        StringBuilder content = new StringBuilder("id,value\n");
+        for (int i = 0; i < 1000; i++) {
+            content.append(i).append(',').append(i % 7 == 0 ? "" : "é" + i).append('\n');
+        }
+        File file = write(content.toString());
+        StoredDataSet dataset = new DataSetFromCSV().readParallel(file, null, 8);
+        assertNotNull(dataset);
+        assertEquals(List.of("id", "value"), dataset.getHeaders());
+        assertEquals(readSequential(file), rows(dataset));
+    }
+
+    @Test
+    public void testLoadFallsBackToSequential() throws IOException, RPTWTRException {
+        System.out.println("load falls back to sequential");
+        TestConfiguration.createWithOptions("reportdefinition", "-t", "4");
+        // larger than the parallel threshold, with a quoted field spanning the
+        // point at which the second chunk would start
+        StringBuilder content = new StringBuilder("id,text\n");
+        for (int i = 0; i < 200000; i++) {
+            content.append(i).append(",row ").append(i).append('\n');
+        }
+        content.append("q,\"").append("a,b\n".repeat(1500000)).append("\"\n");
+        for (int i = 0; i < 200000; i++) {
+            content.append(i).append(",row ").append(i).append('\n');
+        }
+        File file = write(content.toString());
+        assertTrue(file.length() > 8 * 1024 * 1024);
+        assertNull(new DataSetFromCSV().readParallel(file, null, 4));
+        ExpressionMap parameters = new ExpressionMap();
+        parameters.put("path", new StringLiteral(file.getAbsolutePath()));
+        parameters.put("match", new StringLiteral("full"));
+        StoredDataSet dataset = DataSetFromCSV.create("test", parameters);
+        assertEquals(400001, dataset.size());
+        assertEquals(readSequential(file), rows(dataset));
+    }
+}
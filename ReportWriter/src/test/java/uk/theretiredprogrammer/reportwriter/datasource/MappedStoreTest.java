@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class MappedStoreTest {
+
+    private static List<Path> tempFiles() throws IOException {
+        try ( Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("reportwriter-offheap"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testStore() throws IOException {
+        System.out.println("mapped store");
+        List<Path> before = tempFiles();
+        MappedStore store = new MappedStore();
+        // spanning the first chunk boundary
+        byte[] bytes = "x".repeat((1 << 26) + 10).getBytes(StandardCharsets.US_ASCII);
+        bytes[(1 << 26) - 1] = 'a';
+        bytes[1 << 26] = 'b';
+        store.appendLong(42);
+        store.append(bytes);
+        assertEquals(bytes.length + 8, store.size());
+        assertEquals(42, store.getLong(0));
+        assertEquals('a', store.get((1 << 26) + 7));
+        assertEquals('b', store.get((1 << 26) + 8));
+        byte[] read = new byte[bytes.length];
+        store.get(8, read);
+        assertArrayEquals(bytes, read);
+        // the file is deleted once opened
+        assertEquals(before, tempFiles());
+    }
+}
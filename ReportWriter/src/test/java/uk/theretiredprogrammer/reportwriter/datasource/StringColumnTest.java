@@ -0,0 +1,158 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class StringColumnTest {
+
+    private static final int OVERFLOW = 70000;
+
+    private static String value(int i) {
+        // every third row repeats an earlier value
+        return i % 3 == 0 ? "v" + i / 3 : "v" + i;
+    }
+
+    @Test
+    public void testDictionaryOverflow() {
+        System.out.println("dictionary overflow");
+        StringColumn column = new StringColumn();
+        for (int i = 0; i < 1000; i++) {
+            column.add(value(i));
+        }
+        assertTrue(column.isDictionaryEncoded());
+        for (int i = 1000; i < OVERFLOW * 2; i++) {
+            column.add(value(i));
+        }
+        assertFalse(column.isDictionaryEncoded());
+        assertEquals(OVERFLOW * 2, column.size());
+        for (int i = 0; i < OVERFLOW * 2; i++) {
+            assertEquals(value(i), column.get(i), "row " + i);
+        }
+        assertEquals(List.of(OVERFLOW * 2 - 1), rows(column.equalsSelector(value(OVERFLOW * 2 - 1), false), column.size()));
+    }
+
+    @Test
+    public void testAddAllMergesDictionaries() {
+        System.out.println("addAll merges dictionaries");
+        StringColumn column = column("x", "y", "x");
+        StringColumn from = column("z", "y", "z", "w");
+        column.addAll(from);
+        assertTrue(column.isDictionaryEncoded());
+        assertEquals(4, column.getDictionarySize());
+        assertEquals(List.of("x", "y", "x", "z", "y", "z", "w"), values(column));
+        // the codes of the added rows are recoded into the merged dictionary
+        assertEquals(column.getCode(1), column.getCode(4));
+        assertEquals(column.getCode(3), column.getCode(5));
+        assertEquals(List.of(1, 4), rows(column.equalsSelector("y", false), column.size()));
+        // the source column is unchanged
+        assertEquals(List.of("z", "y", "z", "w"), values(from));
+        assertEquals(3, from.getDictionarySize());
+    }
+
+    @Test
+    public void testAddAllOverflow() {
+        System.out.println("addAll overflow");
+        StringColumn column = new StringColumn();
+        StringColumn from = new StringColumn();
+        for (int i = 0; i < 40000; i++) {
+            column.add("a" + i);
+            from.add("b" + i);
+        }
+        column.addAll(from);
+        // the merged dictionary would be too large, so the column is decoded
+        assertFalse(column.isDictionaryEncoded());
+        assertEquals(80000, column.size());
+        assertEquals("a39999", column.get(39999));
+        assertEquals("b0", column.get(40000));
+        // and an encoded column can be added to a decoded one
+        column.addAll(column("x", "b1"));
+        assertEquals(80002, column.size());
+        assertEquals("x", column.get(80000));
+        assertEquals("b1", column.get(80001));
+        // as can a decoded column to an encoded one
+        StringColumn encoded = column("y");
+        encoded.addAll(column);
+        assertFalse(encoded.isDictionaryEncoded());
+        assertEquals(80003, encoded.size());
+        assertEquals("y", encoded.get(0));
+        assertEquals("b1", encoded.get(80002));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        System.out.println("write and read");
+        StringColumn encoded = column("x", "été", "x");
+        StringColumn decoded = new StringColumn();
+        for (int i = 0; i < OVERFLOW; i++) {
+            decoded.add("d" + i);
+        }
+        assertFalse(decoded.isDictionaryEncoded());
+        for (StringColumn column : List.of(encoded, decoded)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try ( DataOutputStream out = new DataOutputStream(bytes)) {
+                column.write(out);
+            }
+            StringColumn read = new StringColumn(ByteBuffer.wrap(bytes.toByteArray()), column.size());
+            assertEquals(column.isDictionaryEncoded(), read.isDictionaryEncoded());
+            assertEquals(values(column), values(read));
+            read.add("new");
+            assertEquals("new", read.get(column.size()));
+        }
+    }
+
+    private static StringColumn column(String... values) {
+        StringColumn column = new StringColumn();
+        for (String value : values) {
+            column.add(value);
+        }
+        return column;
+    }
+
+    private static List<String> values(Column column) {
+        String[] values = new String[column.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = column.get(row);
+        }
+        return List.of(values);
+    }
+
+    private static List<Integer> rows(BlockSelector selector, int size) {
+        List<Integer> rows = new ArrayList<>();
+        for (int start = 0; start < size; start += 1024) {
+            int blocksize = Math.min(1024, size - start);
+            long[] in = new long[(blocksize + 63) / 64];
+            long[] out = new long[in.length];
+            for (int i = 0; i < blocksize; i++) {
+                in[i / 64] |= 1L << (i % 64);
+            }
+            selector.select(start, in, out);
+            for (int i = 0; i < blocksize; i++) {
+                if ((out[i / 64] & (1L << (i % 64))) != 0) {
+                    rows.add(start + i);
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.BiFunction;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class TypedColumnTest {
+
+    private static <T extends Column> T column(T column, String... values) {
+        for (String value : values) {
+            column.add(value);
+        }
+        return column;
+    }
+
+    private static List<String> values(Column column) {
+        String[] values = new String[column.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = column.get(row);
+        }
+        return List.of(values);
+    }
+
+    private static <T extends Column> T writeRead(T column, BiFunction<ByteBuffer, Integer, T> reader) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( DataOutputStream out = new DataOutputStream(bytes)) {
+            column.write(out);
+        }
+        return reader.apply(ByteBuffer.wrap(bytes.toByteArray()), column.size());
+    }
+
+    @Test
+    public void testIntegerText() throws IOException {
+        System.out.println("integer text");
+        IntegerColumn formatted = column(new IntegerColumn(), "1", "-20", "", "300");
+        // no text is held while every value is formatted as written
+        assertEquals(4 * 8, formatted.getHeapSize());
+        IntegerColumn column = column(new IntegerColumn(), "5", "007", "+5", "12", "007");
+        assertTrue(column.getHeapSize() > 5 * 8);
+        assertEquals(List.of("5", "007", "+5", "12", "007"), values(column));
+        assertEquals(7, column.getLong(1));
+        assertEquals(5, column.getLong(2));
+        // adding held text to formatted values, and formatted values to held text
+        formatted.addAll(column);
+        assertEquals(List.of("1", "-20", "", "300", "5", "007", "+5", "12", "007"), values(formatted));
+        column.addAll(column(new IntegerColumn(), "8", "9"));
+        column.add(formatted, 6);
+        column.add(formatted, 0);
+        assertEquals(List.of("5", "007", "+5", "12", "007", "8", "9", "+5", "1"), values(column));
+        assertEquals(values(column), values(writeRead(column, IntegerColumn::new)));
+        assertEquals(values(formatted), values(writeRead(formatted, IntegerColumn::new)));
+        IntegerColumn read = writeRead(column(new IntegerColumn(), "1", "2"), IntegerColumn::new);
+        read.add("03");
+        assertEquals(List.of("1", "2", "03"), values(read));
+    }
+
+    @Test
+    public void testDecimalText() throws IOException {
+        System.out.println("decimal text");
+        DecimalColumn column = column(new DecimalColumn(), "2.50", ".5", "1e3", "-0.001", "");
+        assertEquals(List.of("2.50", ".5", "1e3", "-0.001", ""), values(column));
+        assertEquals(0.5, column.getDouble(1));
+        assertEquals(1000, column.getDouble(2));
+        DecimalColumn other = column(new DecimalColumn(), "1.0", "2");
+        other.addAll(column);
+        other.add(column, 1);
+        assertEquals(List.of("1.0", "2", "2.50", ".5", "1e3", "-0.001", "", ".5"), values(other));
+        assertEquals(values(other), values(writeRead(other, DecimalColumn::new)));
+    }
+
+    @Test
+    public void testDateText() throws IOException {
+        System.out.println("date text");
+        ColumnType type = ColumnType.parse("date dd/MM/yyyy");
+        DateColumn formatted = column(new DateColumn(type), "01/02/2020", "31/12/1999", "");
+        assertEquals(3 * 4, formatted.getHeapSize());
+        // a date adjusted by the parse, and dates with surrounding spaces, are held as written
+        DateColumn column = column(new DateColumn(type), "30/02/2020", " 01/02/2020", "29/02/2020");
+        assertEquals(List.of("30/02/2020", " 01/02/2020", "29/02/2020"), values(column));
+        assertEquals(LocalDate.of(2020, 2, 29).toEpochDay(), column.getLong(0));
+        assertEquals(values(column), values(writeRead(column, (in, size) -> new DateColumn(type, in, size))));
+        // a pattern without fixed width fields formats each value to compare
+        ColumnType variable = ColumnType.parse("date d/M/yyyy");
+        DateColumn unfixed = column(new DateColumn(variable), "1/2/2020", "01/02/2020", "12/11/2020");
+        assertEquals(List.of("1/2/2020", "01/02/2020", "12/11/2020"), values(unfixed));
+        assertEquals(column.getLong(1), unfixed.getLong(1));
+        DateColumn iso = column(new DateColumn(ColumnType.DATE), "2020-02-01", "1999-12-31");
+        assertEquals(2 * 4, iso.getHeapSize());
+        assertEquals(List.of("2020-02-01", "1999-12-31"), values(iso));
+    }
+}
@@ -22,6 +22,8 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import uk.theretiredprogrammer.reportwriter.RPTWTRException;
 import uk.theretiredprogrammer.reportwriter.SCM_ExpressionLanguage;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnIndex;
+import uk.theretiredprogrammer.reportwriter.datasource.ColumnType;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.TestConfiguration;
 
@@ -178,6 +180,34 @@ public class ParserTest {
         fail("result expression is not booleanexpression");
     }
 
+    private void commonTestCompiledBoolean(String input, boolean expected, boolean expectedconstant) throws Exception {
+        DataRecord datarecord = new DataRecord(
+                Arrays.asList("abc", "xyz"),
+                Arrays.asList("ABC", "XYZ")
+        );
+        commonTestCompiledBoolean(input, datarecord, expected, expectedconstant);
+    }
+
+    private void commonTestCompiledBoolean(String input, DataRecord datarecord, boolean expected, boolean expectedconstant) throws Exception {
+        try {
+            TestConfiguration.create("reportdefinition");
+        } catch (RPTWTRException ex) {
+            fail("Configuration Failure: " + ex.getLocalizedMessage());
+        }
+        Language language = new SCM_ExpressionLanguage();
+        DefinitionSource source = new DefinitionSource(input);
+        Lexer lexer = new Lexer(source, language);
+        lexer.lex();
+        Parser parser = new Parser(source, language);
+        Operand presult = parser.parse().compile(datarecord.getColumnIndex());
+        if (presult instanceof BooleanExpression boolexp) {
+            assertEquals(expectedconstant, boolexp.isConstant());
+            assertEquals(expected, boolexp.evaluate(datarecord));
+            return;
+        }
+        fail("result expression is not booleanexpression");
+    }
+
     private void commonTestMap(String input, String expectedkey, String expectedvalue) throws Exception {
         try {
             TestConfiguration.create("reportdefinition");
@@ -552,4 +582,51 @@ public class ParserTest {
         System.out.println("TEST44 - parse - command parameter");
         commonTestString("parameter 1", "<undefined>");
     }
+
+    @Test
+    public void testParse45() throws Exception {
+        System.out.println("TEST45 - compile - constant folding");
+        commonTestCompiledBoolean("string!(ab+cd == abcd)+NE=~NONE && parameter 1 == \"<undefined>\"", true, true);
+    }
+
+    @Test
+    public void testParse46() throws Exception {
+        System.out.println("TEST46 - compile - bound fields");
+        commonTestCompiledBoolean("$abc == A+BC && $(\"xy\"+z) =~ xyz", true, false);
+    }
+
+    @Test
+    public void testParse47() throws Exception {
+        System.out.println("TEST47 - compile - short circuit folding");
+        commonTestCompiledBoolean("FALSE && $abc == ABC", false, true);
+    }
+
+    @Test
+    public void testParse48() throws Exception {
+        System.out.println("TEST48 - comparisons");
+        commonTestBoolean("9 < 10 && abc < abd && \"2.50\" >= \"2.5\" && 10 <= 10 && !(b > c)", true);
+    }
+
+    @Test
+    public void testParse49() throws Exception {
+        System.out.println("TEST49 - string matching");
+        commonTestBoolean("abcdef startswith abc && abcdef endswith def && abcdef contains cd && !(abcdef contains dc)", true);
+        commonTestBoolean("\"A1234\" ~~ \"^[A-Z][0-9]+$\" && !(\"A12x\" ~~ \"^[A-Z][0-9]+$\")", true);
+        commonTestCompiledBoolean("$abc startswith A+B && $xyz ~~ \"Y.$\"", true, false);
+        // a pattern which depends on the row
+        commonTestCompiledBoolean("$xyz ~~ ($abc + \"|Z\") && !($abc contains $xyz)", true, false);
+    }
+
+    @Test
+    public void testParse50() throws Exception {
+        System.out.println("TEST50 - typed comparisons");
+        DataRecord datarecord = new DataRecord(
+                new ColumnIndex(Arrays.asList("qty", "day"), Arrays.asList(ColumnType.INTEGER, ColumnType.DATE)),
+                new String[]{"3", "2022-03-05"}
+        );
+        commonTestCompiledBoolean("$qty > 2 && 4 > $qty && $day >= \"2022-03-05\"", datarecord, true, false);
+        // constants which are not values of the column's type are compared as untyped values
+        commonTestCompiledBoolean("$qty > \"2.5\" && $qty < \"3.5\" && $day < \"5 March 2022\"", datarecord, true, false);
+        commonTestCompiledBoolean("$qty > \"3.5\" || \"2.5\" > $qty", datarecord, false, false);
+    }
 }